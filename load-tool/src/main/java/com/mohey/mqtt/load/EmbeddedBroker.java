@@ -0,0 +1,89 @@
+package com.mohey.mqtt.load;
+
+import com.hivemq.embedded.EmbeddedHiveMQ;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * HiveMQ Community Edition running inside the load tool, listening on localhost with in-memory persistence so
+ * that a restart drops every session, which makes clients reconnect and resubscribe from scratch. Its conf folder
+ * has no logback.xml, HiveMQ would reset the logging of the whole process with it, so the broker logs through
+ * the configuration of the tool.
+ * @since 2026/10/19
+ */
+@Slf4j
+final class EmbeddedBroker implements Closeable {
+
+    static final String LOGGING_CONFIGURATION = "load-tool-logback.xml";
+
+    private final Path configuration;
+
+    private final Path data;
+
+    private final Path extensions;
+
+    private EmbeddedHiveMQ hiveMQ;
+
+    EmbeddedBroker(int port) throws IOException {
+        Path home = Files.createTempDirectory("mqtt-load-broker");
+        Path configuration = Files.createDirectories(home.resolve("conf"));
+        Files.write(configuration.resolve("config.xml"), ("<?xml version=\"1.0\"?>\n" +
+                "<hivemq>\n" +
+                "    <listeners>\n" +
+                "        <tcp-listener>\n" +
+                "            <port>" + port + "</port>\n" +
+                "            <bind-address>127.0.0.1</bind-address>\n" +
+                "        </tcp-listener>\n" +
+                "    </listeners>\n" +
+                "    <persistence>\n" +
+                "        <mode>in-memory</mode>\n" +
+                "    </persistence>\n" +
+                "    <anonymous-usage-statistics>\n" +
+                "        <enabled>false</enabled>\n" +
+                "    </anonymous-usage-statistics>\n" +
+                "</hivemq>\n").getBytes(StandardCharsets.UTF_8));
+        this.configuration = configuration;
+        this.data = Files.createDirectories(home.resolve("data"));
+        this.extensions = Files.createDirectories(home.resolve("extensions"));
+    }
+
+    /**
+     * Starts a new broker instance, an embedded HiveMQ cannot be started again once stopped
+     */
+    synchronized void start() {
+        if (this.hiveMQ != null) {
+            return;
+        }
+        this.hiveMQ = EmbeddedHiveMQ.builder()
+                .withConfigurationFolder(this.configuration)
+                .withDataFolder(this.data)
+                .withExtensionsFolder(this.extensions)
+                .build();
+        this.hiveMQ.start().join();
+        log.info("Embedded broker started");
+    }
+
+    synchronized void stop() throws IOException {
+        if (this.hiveMQ == null) {
+            return;
+        }
+        try {
+            this.hiveMQ.close();
+        } catch (Exception e) {
+            throw new IOException("Could not stop the embedded broker", e);
+        } finally {
+            this.hiveMQ = null;
+        }
+        log.info("Embedded broker stopped");
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.stop();
+    }
+}
@@ -0,0 +1,101 @@
+package com.mohey.mqtt.load;
+
+import lombok.Getter;
+import org.springframework.core.env.Environment;
+
+import java.util.Locale;
+
+/**
+ * Settings of a load run, read from <code>--load.*</code> arguments. The <code>--mqtt.*</code> arguments are
+ * passed on to every client, e.g. <code>--mqtt.maxInflight=1000</code>.
+ * @since 2026/10/19
+ */
+@Getter
+final class LoadOptions {
+
+    private final int publishers;
+
+    private final int subscribers;
+
+    /**
+     * Target messages per second summed over all publishers
+     */
+    private final double rate;
+
+    private final long durationSeconds;
+
+    private final RampProfile profile;
+
+    private final double rampSeconds;
+
+    private final int steps;
+
+    private final int payloadSize;
+
+    private final int qos;
+
+    private final boolean embeddedBroker;
+
+    private final int port;
+
+    /**
+     * Seconds between restarts of the embedded broker, 0 to never restart it
+     */
+    private final long brokerRestartInterval;
+
+    private final long brokerDowntimeMillis;
+
+    private final long reportIntervalSeconds;
+
+    private final long connectTimeoutSeconds;
+
+    private final long drainTimeoutSeconds;
+
+    LoadOptions(Environment environment) {
+        this.publishers = environment.getProperty("load.publishers", Integer.class, 1);
+        this.subscribers = environment.getProperty("load.subscribers", Integer.class, 1);
+        this.rate = environment.getProperty("load.rate", Double.class, 1000.0);
+        this.durationSeconds = environment.getProperty("load.duration", Long.class, 60L);
+        this.profile = RampProfile.valueOf(environment.getProperty("load.profile", "constant").toUpperCase(Locale.ROOT));
+        this.rampSeconds = environment.getProperty("load.rampUp", Double.class, 10.0);
+        this.steps = environment.getProperty("load.steps", Integer.class, 5);
+        this.payloadSize = environment.getProperty("load.payloadSize", Integer.class, 64);
+        this.qos = environment.getProperty("load.qos", Integer.class, 1);
+        this.embeddedBroker = environment.getProperty("load.embeddedBroker", Boolean.class, true);
+        this.port = environment.getProperty("mqtt.port", Integer.class, 1883);
+        this.brokerRestartInterval = environment.getProperty("load.brokerRestartInterval", Long.class, 0L);
+        this.brokerDowntimeMillis = environment.getProperty("load.brokerDowntime", Long.class, 2000L);
+        this.reportIntervalSeconds = environment.getProperty("load.reportInterval", Long.class, 5L);
+        this.connectTimeoutSeconds = environment.getProperty("load.connectTimeout", Long.class, 30L);
+        this.drainTimeoutSeconds = environment.getProperty("load.drainTimeout", Long.class, 10L);
+
+        if (this.publishers < 1 || this.subscribers < 1) {
+            throw new IllegalArgumentException("load.publishers and load.subscribers must be at least 1");
+        }
+        if (!(this.rate > 0) || this.durationSeconds <= 0) {
+            throw new IllegalArgumentException("load.rate and load.duration must be positive");
+        }
+        if (this.steps < 1 || this.rampSeconds < 0) {
+            throw new IllegalArgumentException("load.steps must be at least 1 and load.rampUp not negative");
+        }
+        if (this.brokerRestartInterval > 0 && !this.embeddedBroker) {
+            throw new IllegalArgumentException("load.brokerRestartInterval needs the embedded broker");
+        }
+    }
+
+    /**
+     * @return messages per second of a single publisher
+     */
+    double getPublisherRate() {
+        return this.rate / this.publishers;
+    }
+
+    @Override
+    public String toString() {
+        return this.publishers + " publishers, " + this.subscribers + " subscribers, " + this.rate + " msg/s " +
+                this.profile + (this.profile == RampProfile.CONSTANT ? "" : " over " + this.rampSeconds + " s") +
+                ", " + this.durationSeconds + " s, qos " + this.qos + ", " + this.payloadSize + " B payloads, " +
+                (this.embeddedBroker ? "embedded broker" : "external broker") +
+                (this.brokerRestartInterval > 0 ? " restarted every " + this.brokerRestartInterval + " s" : "");
+    }
+}
@@ -0,0 +1,43 @@
+package com.mohey.mqtt.load;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Payload of a load message, <code>[long sendNanos][int publisher][long sequence]</code> padded with zeros to the
+ * configured size. Send times come from {@link System#nanoTime()}, so publishers and subscribers must share the JVM.
+ * @since 2026/10/19
+ */
+@Getter
+@AllArgsConstructor
+final class LoadPayload {
+
+    static final int HEADER_SIZE = Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final long sendNanos;
+
+    private final int publisher;
+
+    private final long sequence;
+
+    byte[] encode(int size) {
+        return ByteBuffer.allocate(Math.max(HEADER_SIZE, size))
+                .putLong(this.sendNanos)
+                .putInt(this.publisher)
+                .putLong(this.sequence)
+                .array();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the payload is too short to be a load message
+     */
+    static LoadPayload decode(byte[] payload) {
+        if (payload.length < HEADER_SIZE) {
+            throw new IllegalArgumentException("Payload is too short for a load message: " + payload.length + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        return new LoadPayload(buffer.getLong(), buffer.getInt(), buffer.getLong());
+    }
+}
@@ -0,0 +1,85 @@
+package com.mohey.mqtt.load;
+
+import com.mohey.mqtt.core.IMQTTPublisher;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes numbered, timestamped messages on its own topic following the ramp profile until the duration is over
+ * @since 2026/10/19
+ */
+@Slf4j
+final class LoadPublisher implements Runnable {
+
+    private static final long SPIN_NANOS = 50_000;
+
+    private final int index;
+
+    private final IMQTTPublisher publisher;
+
+    private final String topic;
+
+    private final LoadOptions options;
+
+    private final long startNanos;
+
+    private final AtomicLong sent = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    LoadPublisher(int index, IMQTTPublisher publisher, String topic, LoadOptions options, long startNanos) {
+        this.index = index;
+        this.publisher = publisher;
+        this.topic = topic;
+        this.options = options;
+        this.startNanos = startNanos;
+    }
+
+    @Override
+    public void run() {
+        long durationNanos = this.options.getDurationSeconds() * 1_000_000_000L;
+        for (long sequence = 0; !Thread.currentThread().isInterrupted(); sequence++) {
+            long dueNanos = this.options.getProfile().dueNanos(sequence, this.options.getPublisherRate(),
+                    this.options.getRampSeconds(), this.options.getSteps());
+            if (dueNanos >= durationNanos) {
+                return;
+            }
+            long sendNanos = this.startNanos + dueNanos;
+            waitUntil(sendNanos);
+
+            MqttMessage message = new MqttMessage(new LoadPayload(sendNanos, this.index, sequence).encode(this.options.getPayloadSize()));
+            message.setQos(this.options.getQos());
+            try {
+                this.publisher.publishMessage(this.topic, message);
+                this.sent.incrementAndGet();
+            } catch (MqttException e) {
+                if (this.errors.incrementAndGet() == 1) {
+                    log.warn("Publish failed on topic: " + this.topic + ", " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    long getSent() {
+        return this.sent.get();
+    }
+
+    long getErrors() {
+        return this.errors.get();
+    }
+
+    private static void waitUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
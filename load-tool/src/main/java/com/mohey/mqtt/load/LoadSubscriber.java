@@ -0,0 +1,76 @@
+package com.mohey.mqtt.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the end-to-end latency of every load message one subscriber receives, in microseconds, and tracks the
+ * sequences of every publisher to find lost, duplicated and reordered messages
+ * @since 2026/10/19
+ */
+final class LoadSubscriber implements IMqttMessageListener {
+
+    private final Recorder recorder = new Recorder(3);
+
+    private final SequenceTracker[] trackers;
+
+    private final AtomicLong received = new AtomicLong();
+
+    private final AtomicLong invalid = new AtomicLong();
+
+    private volatile long lastArrivalNanos;
+
+    LoadSubscriber(int publishers) {
+        this.trackers = new SequenceTracker[publishers];
+        for (int i = 0; i < publishers; i++) {
+            this.trackers[i] = new SequenceTracker();
+        }
+    }
+
+    @Override
+    public void messageArrived(String topic, MqttMessage message) {
+        long arrivalNanos = System.nanoTime();
+        LoadPayload payload;
+        try {
+            payload = LoadPayload.decode(message.getPayload());
+        } catch (IllegalArgumentException e) {
+            this.invalid.incrementAndGet();
+            return;
+        }
+        if (payload.getPublisher() < 0 || payload.getPublisher() >= this.trackers.length) {
+            this.invalid.incrementAndGet();
+            return;
+        }
+        this.recorder.recordValue(Math.max(0, (arrivalNanos - payload.getSendNanos()) / 1000));
+        this.trackers[payload.getPublisher()].record(payload.getSequence());
+        this.received.incrementAndGet();
+        this.lastArrivalNanos = arrivalNanos;
+    }
+
+    /**
+     * @return the latencies recorded since the previous call
+     */
+    Histogram intervalHistogram() {
+        return this.recorder.getIntervalHistogram();
+    }
+
+    SequenceTracker getTracker(int publisher) {
+        return this.trackers[publisher];
+    }
+
+    long getReceived() {
+        return this.received.get();
+    }
+
+    long getInvalid() {
+        return this.invalid.get();
+    }
+
+    long getLastArrivalNanos() {
+        return this.lastArrivalNanos;
+    }
+}
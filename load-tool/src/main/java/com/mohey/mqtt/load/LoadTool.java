@@ -0,0 +1,318 @@
+package com.mohey.mqtt.load;
+
+import com.mohey.mqtt.core.IMQTTClient;
+import com.mohey.mqtt.core.MQTTConfig;
+import com.mohey.mqtt.core.MQTTPublisher;
+import com.mohey.mqtt.core.MQTTSubscriber;
+import org.HdrHistogram.Histogram;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end latency load generator and soak harness.
+ * <p>
+ * Starts N {@link MQTTPublisher} and M {@link MQTTSubscriber} instances, each in its own Spring context since
+ * the clients are singletons of their context, against an embedded broker or the one given with
+ * <code>--mqtt.brokerURL</code> and <code>--load.embeddedBroker=false</code>. Every publisher sends numbered,
+ * timestamped messages on <code>load/&lt;run&gt;/&lt;publisher&gt;</code> following the ramp profile, and every
+ * subscriber receives all of them. Progress is printed every report interval, and the run ends with the latency
+ * percentiles, the throughput and the lost, duplicated and reordered message counts. Messages still queued in a
+ * publisher when the run ends, e.g. waiting for a reconnect, are reported as pending rather than lost.</p>
+ * <p>
+ * With <code>--load.brokerRestartInterval</code> the embedded broker is restarted periodically, which exercises
+ * reconnects and resubscribes under load. The exit code is 1 when messages published with qos 1 or 2 were lost.</p>
+ * @since 2026/10/19
+ */
+public final class LoadTool {
+
+    static {
+        // Point logback at our configuration, which quietens the embedded broker, before the first logger is created
+        if (System.getProperty("logback.configurationFile") == null) {
+            System.setProperty("logback.configurationFile", EmbeddedBroker.LOGGING_CONFIGURATION);
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(LoadTool.class);
+
+    private static final String TOPIC_PREFIX = "load/";
+
+    private final LoadOptions options;
+
+    private final ConfigurableEnvironment environment;
+
+    private final String runId = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    private final List<AnnotationConfigApplicationContext> contexts = new ArrayList<>();
+
+    private final List<MQTTPublisher> publishers = new ArrayList<>();
+
+    private final List<MQTTSubscriber> subscribers = new ArrayList<>();
+
+    private final List<LoadPublisher> loadPublishers = new ArrayList<>();
+
+    private final List<LoadSubscriber> loadSubscribers = new ArrayList<>();
+
+    private final Histogram totalLatency = new Histogram(3);
+
+    private final AtomicLong reconnects = new AtomicLong();
+
+    private final AtomicLong brokerRestarts = new AtomicLong();
+
+    private EmbeddedBroker broker;
+
+    private long startNanos;
+
+    private long reportedNanos;
+
+    private long reportedSent;
+
+    private long reportedReceived;
+
+    LoadTool(LoadOptions options, ConfigurableEnvironment environment) {
+        this.options = options;
+        this.environment = environment;
+    }
+
+    public static void main(String[] args) {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        int exitCode;
+        try {
+            exitCode = new LoadTool(new LoadOptions(environment), environment).run();
+        } catch (Exception e) {
+            log.error("Load run failed: " + e.getMessage(), e);
+            exitCode = 2;
+        }
+        System.exit(exitCode);
+    }
+
+    int run() throws Exception {
+        System.out.println("Load run " + this.runId + ": " + this.options);
+        if (this.options.isEmbeddedBroker()) {
+            this.broker = new EmbeddedBroker(this.options.getPort());
+            this.broker.start();
+        }
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        try {
+            this.startClients();
+            this.awaitConnected();
+            for (int i = 0; i < this.subscribers.size(); i++) {
+                this.subscribers.get(i).subscribeMessage(TOPIC_PREFIX + this.runId + "/+", this.options.getQos(), this.loadSubscribers.get(i));
+            }
+            this.subscribers.forEach(subscriber -> subscriber.addOnConnectTask(this.reconnects::incrementAndGet));
+            this.publishers.forEach(publisher -> publisher.addOnConnectTask(this.reconnects::incrementAndGet));
+
+            this.startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+            this.reportedNanos = this.startNanos;
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < this.publishers.size(); i++) {
+                LoadPublisher loadPublisher = new LoadPublisher(i, this.publishers.get(i), TOPIC_PREFIX + this.runId + "/" + i,
+                        this.options, this.startNanos);
+                this.loadPublishers.add(loadPublisher);
+                Thread thread = new Thread(loadPublisher, "load-publisher-" + i);
+                threads.add(thread);
+                thread.start();
+            }
+            long reportInterval = this.options.getReportIntervalSeconds();
+            scheduler.scheduleAtFixedRate(this::report, reportInterval, reportInterval, TimeUnit.SECONDS);
+            if (this.options.getBrokerRestartInterval() > 0) {
+                long restartInterval = this.options.getBrokerRestartInterval();
+                scheduler.scheduleWithFixedDelay(this::restartBroker, restartInterval, restartInterval, TimeUnit.SECONDS);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long publishEndNanos = System.nanoTime();
+
+            scheduler.shutdown();
+            scheduler.awaitTermination(this.options.getBrokerDowntimeMillis() + 60_000, TimeUnit.MILLISECONDS);
+            this.awaitDrained();
+            this.report();
+            return this.summary(publishEndNanos);
+        } finally {
+            scheduler.shutdownNow();
+            this.stopClients();
+            if (this.broker != null) {
+                this.broker.close();
+            }
+        }
+    }
+
+    private void startClients() {
+        String host = this.options.isEmbeddedBroker() ? "127.0.0.1" : null;
+        for (int i = 0; i < this.options.getSubscribers(); i++) {
+            this.subscribers.add(this.client(MQTTSubscriber.class, "load-" + this.runId + "-s" + i, host));
+            this.loadSubscribers.add(new LoadSubscriber(this.options.getPublishers()));
+        }
+        for (int i = 0; i < this.options.getPublishers(); i++) {
+            this.publishers.add(this.client(MQTTPublisher.class, "load-" + this.runId + "-p" + i, host));
+        }
+    }
+
+    /**
+     * Creates a client in a context of its own, with the command line settings and its own client id
+     */
+    private <T extends MQTTConfig> T client(Class<T> type, String clientId, String host) {
+        Map<String, Object> overrides = new HashMap<>();
+        overrides.put("mqtt.clientId", clientId);
+        if (host != null) {
+            overrides.put("mqtt.brokerURL", host);
+        }
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().merge(this.environment);
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("load-client", overrides));
+        context.register(type);
+        context.refresh();
+        this.contexts.add(context);
+        return context.getBean(type);
+    }
+
+    private List<IMQTTClient> clients() {
+        List<IMQTTClient> clients = new ArrayList<>(this.subscribers);
+        clients.addAll(this.publishers);
+        return clients;
+    }
+
+    private void awaitConnected() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(this.options.getConnectTimeoutSeconds());
+        while (!this.clients().stream().allMatch(IMQTTClient::isConnected)) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Clients did not connect within " + this.options.getConnectTimeoutSeconds() + " s");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Waits for the messages still on their way once the publishers are done
+     */
+    private void awaitDrained() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(this.options.getDrainTimeoutSeconds());
+        long expected = this.sent() * this.subscribers.size();
+        while (this.received() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    private void restartBroker() {
+        try {
+            this.broker.stop();
+            Thread.sleep(this.options.getBrokerDowntimeMillis());
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            this.broker.start();
+            this.brokerRestarts.incrementAndGet();
+        } catch (RuntimeException e) {
+            log.error("Could not restart the embedded broker: " + e.getMessage(), e);
+        }
+    }
+
+    private synchronized void report() {
+        Histogram interval = new Histogram(3);
+        for (LoadSubscriber loadSubscriber : this.loadSubscribers) {
+            interval.add(loadSubscriber.intervalHistogram());
+        }
+        this.totalLatency.add(interval);
+        long sent = this.sent();
+        long received = this.received();
+        long now = System.nanoTime();
+        // The final report covers a partial interval
+        double seconds = Math.max(now - this.reportedNanos, 1) / 1e9;
+        System.out.printf("[%6.1f s] sent %8.0f msg/s, received %8.0f msg/s, latency ms p50 %s p99 %s p99.9 %s max %s%n",
+                (now - this.startNanos) / 1e9, (sent - this.reportedSent) / seconds,
+                (received - this.reportedReceived) / seconds, millis(interval, 50), millis(interval, 99),
+                millis(interval, 99.9), millis(interval, 100));
+        this.reportedNanos = now;
+        this.reportedSent = sent;
+        this.reportedReceived = received;
+    }
+
+    private int summary(long publishEndNanos) {
+        long sent = this.sent();
+        long errors = this.loadPublishers.stream().mapToLong(LoadPublisher::getErrors).sum();
+        long pending = 0;
+        long lost = 0;
+        long duplicates = 0;
+        long reordered = 0;
+        long invalid = 0;
+        long lastArrivalNanos = this.startNanos;
+        for (LoadSubscriber loadSubscriber : this.loadSubscribers) {
+            for (int i = 0; i < this.loadPublishers.size(); i++) {
+                SequenceTracker tracker = loadSubscriber.getTracker(i);
+                // Messages still queued in the publisher were never sent to the broker, they are pending, not lost
+                long queued = this.publishers.get(i).getQueuedPublishes();
+                long missing = Math.max(0, this.loadPublishers.get(i).getSent() - tracker.getDistinct());
+                pending += Math.min(queued, missing);
+                lost += missing - Math.min(queued, missing);
+                duplicates += tracker.getDuplicates();
+                reordered += tracker.getReordered();
+            }
+            invalid += loadSubscriber.getInvalid();
+            lastArrivalNanos = Math.max(lastArrivalNanos, loadSubscriber.getLastArrivalNanos());
+        }
+        double publishSeconds = (publishEndNanos - this.startNanos) / 1e9;
+        double receiveSeconds = Math.max(publishSeconds, (lastArrivalNanos - this.startNanos) / 1e9);
+
+        System.out.println();
+        System.out.println("Run " + this.runId + ": " + this.options);
+        System.out.printf("Published %d messages in %.1f s (%.0f msg/s), %d publish errors%n",
+                sent, publishSeconds, sent / publishSeconds, errors);
+        System.out.printf("Received  %d of %d expected in %.1f s (%.0f msg/s), lost %d, pending %d, duplicates %d, reordered %d, invalid %d%n",
+                this.received(), sent * this.subscribers.size(), receiveSeconds, this.received() / receiveSeconds,
+                lost, pending, duplicates, reordered, invalid);
+        System.out.printf("Latency ms p50 %s, p99 %s, p99.9 %s, max %s over %d messages%n",
+                millis(this.totalLatency, 50), millis(this.totalLatency, 99), millis(this.totalLatency, 99.9),
+                millis(this.totalLatency, 100), this.totalLatency.getTotalCount());
+        System.out.println("Reconnects " + this.reconnects.get() + ", broker restarts " + this.brokerRestarts.get());
+        return lost > 0 && this.options.getQos() > 0 ? 1 : 0;
+    }
+
+    private void stopClients() {
+        for (IMQTTClient client : this.clients()) {
+            try {
+                if (client.isConnected()) {
+                    client.disconnect();
+                }
+            } catch (MqttException e) {
+                log.debug("Disconnect failed: " + e.getMessage());
+            }
+        }
+        this.contexts.forEach(AnnotationConfigApplicationContext::close);
+    }
+
+    private long sent() {
+        return this.loadPublishers.stream().mapToLong(LoadPublisher::getSent).sum();
+    }
+
+    private long received() {
+        return this.loadSubscribers.stream().mapToLong(LoadSubscriber::getReceived).sum();
+    }
+
+    private static String millis(Histogram histogram, double percentile) {
+        if (histogram.getTotalCount() == 0) {
+            return "-";
+        }
+        long micros = percentile >= 100 ? histogram.getMaxValue() : histogram.getValueAtPercentile(percentile);
+        return String.format("%.3f", micros / 1000.0);
+    }
+}
@@ -0,0 +1,71 @@
+package com.mohey.mqtt.load;
+
+/**
+ * How the publish rate reaches its target. Each profile gives the time the k-th message of a publisher is due,
+ * so publishers follow the schedule instead of a sleep per message, and a publisher that falls behind still stamps
+ * its messages with the time they were due, which keeps stalls visible in the latency.
+ * @since 2026/10/19
+ */
+public enum RampProfile {
+
+    /**
+     * Full rate from the start
+     */
+    CONSTANT {
+        @Override
+        double dueSeconds(long message, double rate, double rampSeconds, int steps) {
+            return message / rate;
+        }
+    },
+
+    /**
+     * Rate grows linearly from zero to the target over the ramp, then stays there
+     */
+    LINEAR {
+        @Override
+        double dueSeconds(long message, double rate, double rampSeconds, int steps) {
+            double rampMessages = rate * rampSeconds / 2;
+            if (message < rampMessages) {
+                return Math.sqrt(2 * rampSeconds * message / rate);
+            }
+            return rampSeconds + (message - rampMessages) / rate;
+        }
+    },
+
+    /**
+     * Rate climbs in equal steps of equal length over the ramp, then stays at the target
+     */
+    STEP {
+        @Override
+        double dueSeconds(long message, double rate, double rampSeconds, int steps) {
+            double stepSeconds = rampSeconds / steps;
+            double remaining = message;
+            for (int step = 0; step < steps; step++) {
+                double stepRate = rate * (step + 1) / steps;
+                double stepMessages = stepRate * stepSeconds;
+                if (remaining < stepMessages) {
+                    return step * stepSeconds + remaining / stepRate;
+                }
+                remaining -= stepMessages;
+            }
+            return rampSeconds + remaining / rate;
+        }
+    };
+
+    /**
+     * @param message zero based index of the message
+     * @param rate target messages per second
+     * @param rampSeconds length of the ramp
+     * @param steps number of steps of the {@link #STEP} profile
+     * @return seconds after the start at which the message is due
+     */
+    abstract double dueSeconds(long message, double rate, double rampSeconds, int steps);
+
+    /**
+     * @return the due time of the message in nanoseconds after the start
+     */
+    long dueNanos(long message, double rate, double rampSeconds, int steps) {
+        double seconds = rampSeconds > 0 ? this.dueSeconds(message, rate, rampSeconds, steps) : message / rate;
+        return (long) (seconds * 1_000_000_000L);
+    }
+}
@@ -0,0 +1,51 @@
+package com.mohey.mqtt.load;
+
+import java.util.BitSet;
+
+/**
+ * Sequences one subscriber received from one publisher. A sequence seen twice is a duplicate, one arriving after
+ * a higher sequence is reordered, and the sequences the publisher sent but never arrived are lost.
+ * @since 2026/10/19
+ */
+final class SequenceTracker {
+
+    private final BitSet received = new BitSet();
+
+    private long highest = -1;
+
+    private long distinct;
+
+    private long duplicates;
+
+    private long reordered;
+
+    synchronized void record(long sequence) {
+        if (sequence < 0 || sequence > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Sequence out of range: " + sequence);
+        }
+        int index = (int) sequence;
+        if (this.received.get(index)) {
+            this.duplicates++;
+            return;
+        }
+        this.received.set(index);
+        this.distinct++;
+        if (sequence < this.highest) {
+            this.reordered++;
+        } else {
+            this.highest = sequence;
+        }
+    }
+
+    synchronized long getDistinct() {
+        return this.distinct;
+    }
+
+    synchronized long getDuplicates() {
+        return this.duplicates;
+    }
+
+    synchronized long getReordered() {
+        return this.reordered;
+    }
+}
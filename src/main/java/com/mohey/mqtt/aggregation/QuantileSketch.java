@@ -0,0 +1,202 @@
+package com.mohey.mqtt.aggregation;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch with relative accuracy guarantees, in the spirit of DDSketch.
+ * <p>
+ * Values are counted in logarithmically sized buckets, so any quantile is returned within the configured
+ * relative error of the true value. Bucket counts live in primitive arrays that are reused after
+ * {@link #clear()}, and two sketches with the same accuracy merge by adding their counts, which is what lets
+ * sliding windows be built from panes.</p>
+ * @since 2026/10/19
+ */
+public final class QuantileSketch {
+
+    private final double relativeAccuracy;
+
+    private final double gamma;
+
+    private final double logGamma;
+
+    private final double minIndexableValue;
+
+    private final Store positive = new Store();
+
+    private final Store negative = new Store();
+
+    private long zeroCount;
+
+    private long count;
+
+    /**
+     * @param relativeAccuracy relative error of the returned quantiles, e.g. 0.01 for 1%
+     */
+    public QuantileSketch(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("relativeAccuracy must be between 0 and 1: " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(this.gamma);
+        this.minIndexableValue = Math.max(Double.MIN_NORMAL * this.gamma, Math.exp((Integer.MIN_VALUE + 1) * this.logGamma));
+    }
+
+    public double getRelativeAccuracy() {
+        return this.relativeAccuracy;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * @param value the value to add
+     * @throws IllegalArgumentException if the value is NaN or infinite, which have no bucket
+     */
+    public void add(double value) {
+        if (!Double.isFinite(value)) {
+            throw new IllegalArgumentException("Value must be finite: " + value);
+        }
+        if (value > this.minIndexableValue) {
+            this.positive.add(this.index(value), 1);
+        } else if (value < -this.minIndexableValue) {
+            this.negative.add(this.index(-value), 1);
+        } else {
+            this.zeroCount++;
+        }
+        this.count++;
+    }
+
+    /**
+     * Adds the counts of another sketch to this one
+     * @param other a sketch with the same relative accuracy
+     */
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != this.relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches with different accuracies");
+        }
+        this.positive.merge(other.positive);
+        this.negative.merge(other.negative);
+        this.zeroCount += other.zeroCount;
+        this.count += other.count;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return the approximate value at the quantile, NaN when the sketch is empty
+     */
+    public double getQuantile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("quantile must be between 0 and 1: " + quantile);
+        }
+        if (this.count == 0) {
+            return Double.NaN;
+        }
+        double rank = quantile * (this.count - 1);
+        long seen = 0;
+        for (int index = this.negative.maxIndex; index >= this.negative.minIndex; index--) {
+            seen += this.negative.get(index);
+            if (seen > rank) {
+                return -this.value(index);
+            }
+        }
+        seen += this.zeroCount;
+        if (seen > rank) {
+            return 0;
+        }
+        for (int index = this.positive.minIndex; index <= this.positive.maxIndex; index++) {
+            seen += this.positive.get(index);
+            if (seen > rank) {
+                return this.value(index);
+            }
+        }
+        return this.value(this.positive.maxIndex);
+    }
+
+    /**
+     * Empties the sketch, keeping its arrays for reuse
+     */
+    public void clear() {
+        this.positive.clear();
+        this.negative.clear();
+        this.zeroCount = 0;
+        this.count = 0;
+    }
+
+    /**
+     * @return an independent copy of this sketch
+     */
+    public QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch(this.relativeAccuracy);
+        copy.merge(this);
+        return copy;
+    }
+
+    private int index(double value) {
+        return (int) Math.ceil(Math.log(value) / this.logGamma);
+    }
+
+    private double value(int index) {
+        return 2 * Math.pow(this.gamma, index) / (this.gamma + 1);
+    }
+
+    /**
+     * Bucket counts indexed from <code>offset</code>, grown on demand in both directions
+     */
+    private static final class Store {
+
+        private long[] counts = new long[0];
+
+        private int offset;
+
+        private int minIndex = Integer.MAX_VALUE;
+
+        private int maxIndex = Integer.MIN_VALUE;
+
+        private long get(int index) {
+            return this.counts[index - this.offset];
+        }
+
+        private void add(int index, long count) {
+            this.ensureCapacity(index);
+            this.counts[index - this.offset] += count;
+            this.minIndex = Math.min(this.minIndex, index);
+            this.maxIndex = Math.max(this.maxIndex, index);
+        }
+
+        private void merge(Store other) {
+            for (int index = other.minIndex; index <= other.maxIndex; index++) {
+                long count = other.get(index);
+                if (count != 0) {
+                    this.add(index, count);
+                }
+            }
+        }
+
+        private void clear() {
+            Arrays.fill(this.counts, 0);
+            this.minIndex = Integer.MAX_VALUE;
+            this.maxIndex = Integer.MIN_VALUE;
+        }
+
+        private void ensureCapacity(int index) {
+            if (this.counts.length == 0) {
+                this.counts = new long[64];
+                this.offset = index - 32;
+                return;
+            }
+            if (index >= this.offset && index < this.offset + this.counts.length) {
+                return;
+            }
+            int low = Math.min(this.offset, index);
+            int high = Math.max(this.offset + this.counts.length - 1, index);
+            int length = Math.max(this.counts.length * 2, high - low + 1);
+            int newOffset = index < this.offset ? high - length + 1 : low;
+            long[] grown = new long[length];
+            System.arraycopy(this.counts, 0, grown, this.offset - newOffset, this.counts.length);
+            this.counts = grown;
+            this.offset = newOffset;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.mohey.mqtt.aggregation;
+
+/**
+ * Running count, sum, min and max of a window plus a {@link QuantileSketch} of its samples.
+ * Accumulators merge, so a sliding window is the merge of the panes it covers.
+ * @since 2026/10/19
+ */
+public final class WindowAccumulator {
+
+    private final QuantileSketch sketch;
+
+    private long count;
+
+    private double sum;
+
+    private double min = Double.POSITIVE_INFINITY;
+
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param relativeAccuracy relative error of the percentiles
+     */
+    public WindowAccumulator(double relativeAccuracy) {
+        this.sketch = new QuantileSketch(relativeAccuracy);
+    }
+
+    /**
+     * @param sample the sample to add, the accumulator is left unchanged if the sketch rejects it
+     */
+    public void add(double sample) {
+        this.sketch.add(sample);
+        this.count++;
+        this.sum += sample;
+        this.min = Math.min(this.min, sample);
+        this.max = Math.max(this.max, sample);
+    }
+
+    public void merge(WindowAccumulator other) {
+        if (other.count == 0) {
+            return;
+        }
+        this.count += other.count;
+        this.sum += other.sum;
+        this.min = Math.min(this.min, other.min);
+        this.max = Math.max(this.max, other.max);
+        this.sketch.merge(other.sketch);
+    }
+
+    /**
+     * Empties the accumulator, keeping its arrays for the next window
+     */
+    public void clear() {
+        this.count = 0;
+        this.sum = 0;
+        this.min = Double.POSITIVE_INFINITY;
+        this.max = Double.NEGATIVE_INFINITY;
+        this.sketch.clear();
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * @param topic the topic the samples arrived on
+     * @param windowStart epoch millis the window opened at
+     * @param windowEnd epoch millis the window closed at
+     * @return the statistics of the accumulated samples, holding its own copy of the sketch
+     */
+    public WindowStatistics toStatistics(String topic, long windowStart, long windowEnd) {
+        return new WindowStatistics(topic, windowStart, windowEnd, this.count, this.min, this.max,
+                this.count == 0 ? Double.NaN : this.sum / this.count, this.sketch.copy());
+    }
+}
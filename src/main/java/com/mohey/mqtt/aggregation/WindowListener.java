@@ -0,0 +1,11 @@
+package com.mohey.mqtt.aggregation;
+
+/**
+ * Receives the statistics of every topic with samples when a window closes
+ * @since 2026/10/19
+ */
+@FunctionalInterface
+public interface WindowListener {
+
+    void windowClosed(WindowStatistics statistics) throws Exception;
+}
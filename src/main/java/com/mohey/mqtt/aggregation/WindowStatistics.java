@@ -0,0 +1,83 @@
+package com.mohey.mqtt.aggregation;
+
+import lombok.Getter;
+
+/**
+ * Statistics of the samples a topic received during one window
+ * @since 2026/10/19
+ */
+@Getter
+public final class WindowStatistics {
+
+    private final String topic;
+
+    private final long windowStart;
+
+    private final long windowEnd;
+
+    private final long count;
+
+    private final double min;
+
+    private final double max;
+
+    private final double mean;
+
+    private final double p50;
+
+    private final double p90;
+
+    private final double p99;
+
+    /**
+     * Sketch of the window, mergeable with the sketches of other windows of the same accuracy
+     */
+    private final QuantileSketch sketch;
+
+    WindowStatistics(String topic, long windowStart, long windowEnd, long count, double min, double max,
+                     double mean, QuantileSketch sketch) {
+        this.topic = topic;
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+        this.sketch = sketch;
+        this.p50 = this.getQuantile(0.5);
+        this.p90 = this.getQuantile(0.9);
+        this.p99 = this.getQuantile(0.99);
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return the approximate value at the quantile, never outside the exact min and max of the window
+     */
+    public double getQuantile(double quantile) {
+        if (this.count == 0) {
+            return Double.NaN;
+        }
+        return Math.max(this.min, Math.min(this.max, this.sketch.getQuantile(quantile)));
+    }
+
+    /**
+     * @return the statistics as a JSON object, the format republished by {@link WindowedAggregator#republishTo}
+     */
+    public String toJson() {
+        return "{\"topic\":\"" + this.topic.replace("\\", "\\\\").replace("\"", "\\\"") + "\"" +
+                ",\"windowStart\":" + this.windowStart +
+                ",\"windowEnd\":" + this.windowEnd +
+                ",\"count\":" + this.count +
+                ",\"min\":" + this.min +
+                ",\"max\":" + this.max +
+                ",\"mean\":" + this.mean +
+                ",\"p50\":" + this.p50 +
+                ",\"p90\":" + this.p90 +
+                ",\"p99\":" + this.p99 + "}";
+    }
+
+    @Override
+    public String toString() {
+        return this.toJson();
+    }
+}
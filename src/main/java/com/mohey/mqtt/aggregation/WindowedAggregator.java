@@ -0,0 +1,241 @@
+package com.mohey.mqtt.aggregation;
+
+import com.mohey.mqtt.core.IMQTTPublisher;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Aggregates numeric samples per topic into tumbling or sliding windows.
+ * <p>
+ * Subscribed like any other listener, see {@link com.mohey.mqtt.core.MQTTSubscriber#subscribeAggregated}, it parses
+ * each payload into a sample and adds it to the current pane of its topic. A pane is one slide long, a window
+ * covers <code>window / slide</code> panes, and a tumbling window is the case where both are equal. Whenever a
+ * slide ends the panes of every topic are merged and their statistics handed to the {@link WindowListener},
+ * then the oldest pane is cleared for reuse. Panes hold their samples in primitive arrays only, so the
+ * steady state allocates nothing per message.</p>
+ * <p>
+ * Windows are aligned to the epoch and closed on the aggregator thread, so the listener should not block for
+ * long. Topics without a sample in a whole window are forgotten and report nothing.</p>
+ * @since 2026/10/19
+ */
+@Slf4j
+public final class WindowedAggregator implements IMqttMessageListener, Closeable {
+
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    private final long windowMillis;
+
+    private final long slideMillis;
+
+    private final int panes;
+
+    private final double relativeAccuracy;
+
+    private final ToDoubleFunction<byte[]> sampleParser;
+
+    private final WindowListener listener;
+
+    private final ConcurrentMap<String, TopicWindow> topics = new ConcurrentHashMap<>();
+
+    private final WindowAccumulator merged;
+
+    private final AtomicLong droppedSamples = new AtomicLong();
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Tumbling windows over payloads holding a decimal number
+     * @param window the window length
+     * @param listener receives the statistics when a window closes
+     */
+    public WindowedAggregator(Duration window, WindowListener listener) {
+        this(window, window, DEFAULT_RELATIVE_ACCURACY, WindowedAggregator::parseDecimal, listener);
+    }
+
+    /**
+     * @param window the window length
+     * @param slide how often a window closes, must divide the window length, equal to it for tumbling windows
+     * @param relativeAccuracy relative error of the percentiles
+     * @param sampleParser turns a payload into a sample, may throw to drop the message
+     * @param listener receives the statistics when a window closes
+     */
+    public WindowedAggregator(Duration window, Duration slide, double relativeAccuracy,
+                              ToDoubleFunction<byte[]> sampleParser, WindowListener listener) {
+        this.windowMillis = window.toMillis();
+        this.slideMillis = slide.toMillis();
+        if (this.slideMillis <= 0 || this.windowMillis < this.slideMillis || this.windowMillis % this.slideMillis != 0) {
+            throw new IllegalArgumentException("Slide must be positive and divide the window: window " +
+                    this.windowMillis + " ms, slide " + this.slideMillis + " ms");
+        }
+        this.panes = (int) (this.windowMillis / this.slideMillis);
+        this.relativeAccuracy = relativeAccuracy;
+        this.sampleParser = sampleParser;
+        this.listener = listener;
+        this.merged = new WindowAccumulator(relativeAccuracy);
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mqtt-aggregation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long now = System.currentTimeMillis();
+        this.executor.scheduleAtFixedRate(this::closeWindows, this.slideMillis - now % this.slideMillis,
+                this.slideMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Listener publishing the statistics of each window as JSON on <code>topicPrefix + topic</code>
+     * @param publisher the publisher to send the statistics with
+     * @param topicPrefix prepended to the topic the samples arrived on, e.g. <code>stats/</code>
+     * @param qos the qos to publish with
+     * @return the listener to pass to the aggregator
+     */
+    public static WindowListener republishTo(IMQTTPublisher publisher, String topicPrefix, int qos) {
+        return statistics -> publisher.publishMessage(topicPrefix + statistics.getTopic(), statistics.toJson(), qos, false);
+    }
+
+    /**
+     * Parses a payload holding a decimal number in ASCII, surrounding whitespace allowed
+     * @param payload the message payload
+     * @return the parsed sample
+     * @throws NumberFormatException if the payload is not a finite number, NaN and Infinity included
+     */
+    public static double parseDecimal(byte[] payload) {
+        String text = new String(payload, StandardCharsets.US_ASCII).trim();
+        double sample = Double.parseDouble(text);
+        if (!Double.isFinite(sample)) {
+            throw new NumberFormatException("Not a finite number: " + text);
+        }
+        return sample;
+    }
+
+    @Override
+    public void messageArrived(String topic, MqttMessage message) {
+        try {
+            this.add(topic, this.sampleParser.applyAsDouble(message.getPayload()));
+        } catch (RuntimeException e) {
+            this.droppedSamples.incrementAndGet();
+            log.debug("Dropped non-numeric sample on topic: " + topic);
+        }
+    }
+
+    /**
+     * Adds a sample to the current window of a topic
+     * @param topic the topic the sample belongs to
+     * @param sample the sample
+     * @throws IllegalArgumentException if the sample is NaN or infinite
+     */
+    public void add(String topic, double sample) {
+        if (!Double.isFinite(sample)) {
+            throw new IllegalArgumentException("Sample must be finite: " + sample);
+        }
+        while (true) {
+            TopicWindow topicWindow = this.topics.computeIfAbsent(topic, key -> new TopicWindow(this.panes, this.relativeAccuracy));
+            synchronized (topicWindow) {
+                if (!topicWindow.retired) {
+                    topicWindow.current().add(sample);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of topics with samples in the current window
+     */
+    public int getActiveTopics() {
+        return this.topics.size();
+    }
+
+    /**
+     * @return the number of payloads dropped because the sample parser rejected them or the sample was not finite
+     */
+    public long getDroppedSamples() {
+        return this.droppedSamples.get();
+    }
+
+    /**
+     * Stops closing windows, samples of the open windows are not reported
+     */
+    @Override
+    public void close() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Reports the window ending at the current slide of every topic and rotates its panes, run by the aggregator
+     * thread once per slide
+     */
+    void closeWindows() {
+        long windowEnd = Math.round((double) System.currentTimeMillis() / this.slideMillis) * this.slideMillis;
+        long windowStart = windowEnd - this.windowMillis;
+        for (Map.Entry<String, TopicWindow> entry : this.topics.entrySet()) {
+            TopicWindow topicWindow = entry.getValue();
+            WindowStatistics statistics = null;
+            synchronized (topicWindow) {
+                this.merged.clear();
+                for (WindowAccumulator pane : topicWindow.panes) {
+                    this.merged.merge(pane);
+                }
+                if (this.merged.getCount() == 0) {
+                    topicWindow.retired = true;
+                    this.topics.remove(entry.getKey(), topicWindow);
+                } else {
+                    statistics = this.merged.toStatistics(entry.getKey(), windowStart, windowEnd);
+                    topicWindow.advance();
+                }
+            }
+            if (statistics != null) {
+                this.emit(statistics);
+            }
+        }
+    }
+
+    private void emit(WindowStatistics statistics) {
+        try {
+            this.listener.windowClosed(statistics);
+        } catch (Exception e) {
+            log.error("Window listener failed for topic: " + statistics.getTopic() + ", " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Ring of panes of one topic, guarded by its own monitor
+     */
+    private static final class TopicWindow {
+
+        private final WindowAccumulator[] panes;
+
+        private int current;
+
+        private boolean retired;
+
+        private TopicWindow(int panes, double relativeAccuracy) {
+            this.panes = new WindowAccumulator[panes];
+            for (int i = 0; i < panes; i++) {
+                this.panes[i] = new WindowAccumulator(relativeAccuracy);
+            }
+        }
+
+        private WindowAccumulator current() {
+            return this.panes[this.current];
+        }
+
+        private void advance() {
+            this.current = (this.current + 1) % this.panes.length;
+            this.panes[this.current].clear();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.mohey.mqtt.capture;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only, memory-mapped, segmented log of inbound messages.
+ * <p>
+ * Each segment is a pair of files: a <code>.log</code> file holding the records and a
+ * <code>.idx</code> file holding a sparse time index. A record is laid out as
+ * <code>[int length][long timestamp][byte qos][short topicLength][topic][int payloadLength][payload]</code>,
+ * where <code>length</code> covers everything after itself. A zero length marks the end of the segment,
+ * which is what a freshly mapped file is filled with.</p>
+ * <p>
+ * The index starts with an <code>int</code> entry count followed by <code>[long timestamp][int position]</code>
+ * entries, one for roughly every <code>indexInterval</code> bytes of records.</p>
+ * @since 2026/10/19
+ */
+@Slf4j
+public final class CaptureLog implements Closeable {
+
+    static final String LOG_SUFFIX = ".log";
+
+    static final String INDEX_SUFFIX = ".idx";
+
+    static final int RECORD_HEADER = Long.BYTES + Byte.BYTES + Short.BYTES + Integer.BYTES;
+
+    static final int INDEX_HEADER = Integer.BYTES;
+
+    static final int INDEX_ENTRY = Long.BYTES + Integer.BYTES;
+
+    private static final int MAX_TOPIC_LENGTH = 0xFFFF;
+
+    @Getter
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final int indexInterval;
+
+    private long segmentNumber;
+
+    private FileChannel logChannel;
+
+    private MappedByteBuffer logBuffer;
+
+    private FileChannel indexChannel;
+
+    private MappedByteBuffer indexBuffer;
+
+    private int indexCount;
+
+    private int lastIndexedPosition;
+
+    private boolean closed;
+
+    /**
+     * Opens a capture log in the given directory, starting a new segment after any existing ones
+     * @param directory the directory holding the segment files, created if missing
+     * @param segmentSize size in bytes of each memory-mapped segment
+     * @param indexInterval number of record bytes between two sparse index entries
+     * @throws IOException if the directory or first segment could not be created
+     */
+    public CaptureLog(Path directory, int segmentSize, int indexInterval) throws IOException {
+        if (segmentSize <= Integer.BYTES + RECORD_HEADER) {
+            throw new IllegalArgumentException("segmentSize is too small: " + segmentSize);
+        }
+        if (indexInterval <= 0) {
+            throw new IllegalArgumentException("indexInterval must be positive: " + indexInterval);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.indexInterval = indexInterval;
+        Files.createDirectories(directory);
+        this.segmentNumber = CaptureReader.lastSegmentNumber(directory) + 1;
+        this.openSegment();
+    }
+
+    /**
+     * Appends a message to the log, rolling to a new segment when the current one is full
+     * @param timestamp arrival time in epoch milliseconds
+     * @param topic the topic the message arrived on
+     * @param message the arrived message
+     * @throws IOException if the message cannot fit in a segment or a new segment could not be created
+     */
+    public synchronized void append(long timestamp, String topic, MqttMessage message) throws IOException {
+        if (this.closed) {
+            return;
+        }
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = message.getPayload();
+        if (topicBytes.length > MAX_TOPIC_LENGTH) {
+            throw new IOException("Topic is too long to capture: " + topicBytes.length + " bytes");
+        }
+        int recordLength = RECORD_HEADER + topicBytes.length + payload.length;
+        if (Integer.BYTES + recordLength > this.segmentSize) {
+            throw new IOException("Message on topic " + topic + " is too large to capture: " + recordLength + " bytes");
+        }
+        if (this.logBuffer.remaining() < Integer.BYTES + recordLength) {
+            this.roll();
+        }
+
+        int position = this.logBuffer.position();
+        if (this.indexCount == 0 || position - this.lastIndexedPosition >= this.indexInterval) {
+            this.indexBuffer.putLong(timestamp).putInt(position);
+            this.indexBuffer.putInt(0, ++this.indexCount);
+            this.lastIndexedPosition = position;
+        }
+
+        this.logBuffer.putInt(recordLength)
+                .putLong(timestamp)
+                .put((byte) message.getQos())
+                .putShort((short) topicBytes.length)
+                .put(topicBytes)
+                .putInt(payload.length)
+                .put(payload);
+    }
+
+    /**
+     * Flushes the current segment and releases its files
+     * @throws IOException for problems encountered while closing the segment files
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.closeSegment();
+    }
+
+    private void roll() throws IOException {
+        this.closeSegment();
+        this.segmentNumber++;
+        this.openSegment();
+        log.info("Capture log rolled to segment " + this.segmentNumber);
+    }
+
+    private void openSegment() throws IOException {
+        String name = CaptureReader.segmentName(this.segmentNumber);
+        int indexSize = INDEX_HEADER + (this.segmentSize / this.indexInterval + 1) * INDEX_ENTRY;
+
+        this.logChannel = FileChannel.open(this.directory.resolve(name + LOG_SUFFIX),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.logBuffer = this.logChannel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+        this.indexChannel = FileChannel.open(this.directory.resolve(name + INDEX_SUFFIX),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.indexBuffer = this.indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexSize);
+        this.indexBuffer.position(INDEX_HEADER);
+        this.indexCount = 0;
+        this.lastIndexedPosition = 0;
+    }
+
+    private void closeSegment() throws IOException {
+        this.logBuffer.force();
+        this.indexBuffer.force();
+        this.logChannel.close();
+        this.indexChannel.close();
+    }
+}
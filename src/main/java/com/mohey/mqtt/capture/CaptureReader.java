@@ -0,0 +1,151 @@
+package com.mohey.mqtt.capture;
+
+import com.mohey.mqtt.model.CapturedMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads the segments written by {@link CaptureLog}, using the sparse time index to seek to the
+ * start of a time window instead of scanning every record before it.
+ * @since 2026/10/19
+ */
+public final class CaptureReader {
+
+    private final Path directory;
+
+    public CaptureReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Reads every captured message
+     * @param consumer called for each message in capture order, returns false to stop reading
+     * @throws IOException for problems encountered while reading the segments
+     */
+    public void read(Predicate<CapturedMessage> consumer) throws IOException {
+        this.read(Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Reads the captured messages whose timestamp falls in the given window
+     * @param fromMillis inclusive start of the window in epoch milliseconds
+     * @param toMillis inclusive end of the window in epoch milliseconds
+     * @param consumer called for each message in capture order, returns false to stop reading
+     * @throws IOException for problems encountered while reading the segments
+     */
+    public void read(long fromMillis, long toMillis, Predicate<CapturedMessage> consumer) throws IOException {
+        List<Path> segments = segments(this.directory);
+        List<ByteBuffer> indexes = new ArrayList<>(segments.size());
+        int first = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            ByteBuffer index = map(indexPath(segments.get(i)));
+            indexes.add(index);
+            if (index.getInt(0) > 0 && index.getLong(CaptureLog.INDEX_HEADER) < fromMillis) {
+                first = i;
+            }
+        }
+
+        for (int i = first; i < segments.size(); i++) {
+            int position = i == first ? seek(indexes.get(i), fromMillis) : 0;
+            if (!this.readSegment(segments.get(i), position, fromMillis, toMillis, consumer)) {
+                return;
+            }
+        }
+    }
+
+    private boolean readSegment(Path segment, int position, long fromMillis, long toMillis,
+                                Predicate<CapturedMessage> consumer) throws IOException {
+        ByteBuffer buffer = map(segment);
+        buffer.position(position);
+        while (buffer.remaining() >= Integer.BYTES) {
+            int recordLength = buffer.getInt();
+            if (recordLength <= 0 || recordLength > buffer.remaining()) {
+                return true;
+            }
+            long timestamp = buffer.getLong();
+            int qos = buffer.get();
+            byte[] topic = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(topic);
+            byte[] payload = new byte[buffer.getInt()];
+            buffer.get(payload);
+
+            if (timestamp > toMillis) {
+                return false;
+            }
+            if (timestamp >= fromMillis
+                    && !consumer.test(new CapturedMessage(timestamp, new String(topic, StandardCharsets.UTF_8), qos, payload))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Binary searches the sparse index for the last entry strictly before the given time, records stamped
+     * exactly at the start of the window may precede an index entry with that same time
+     */
+    private static int seek(ByteBuffer index, long fromMillis) {
+        int low = 0;
+        int high = index.getInt(0) - 1;
+        int position = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = CaptureLog.INDEX_HEADER + mid * CaptureLog.INDEX_ENTRY;
+            if (index.getLong(offset) < fromMillis) {
+                position = index.getInt(offset + Long.BYTES);
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return position;
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static Path indexPath(Path segment) {
+        String name = segment.getFileName().toString();
+        return segment.resolveSibling(name.substring(0, name.length() - CaptureLog.LOG_SUFFIX.length()) + CaptureLog.INDEX_SUFFIX);
+    }
+
+    static String segmentName(long segmentNumber) {
+        return String.format("%020d", segmentNumber);
+    }
+
+    static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(CaptureLog.LOG_SUFFIX))
+                    .filter(path -> Files.exists(indexPath(path)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    static long lastSegmentNumber(Path directory) throws IOException {
+        List<Path> segments = segments(directory);
+        if (segments.isEmpty()) {
+            return -1;
+        }
+        String name = segments.get(segments.size() - 1).getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - CaptureLog.LOG_SUFFIX.length()));
+    }
+}
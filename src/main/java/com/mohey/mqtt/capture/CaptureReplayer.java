@@ -0,0 +1,126 @@
+package com.mohey.mqtt.capture;
+
+import com.mohey.mqtt.core.IMQTTPublisher;
+import com.mohey.mqtt.core.MQTTSubscriber;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds a capture written by {@link CaptureLog} back into message listeners, the registered listeners of an
+ * {@link MQTTSubscriber}, or an {@link IMQTTPublisher}, keeping the original spacing between messages scaled by a
+ * speed factor.
+ * @since 2026/10/19
+ */
+@Slf4j
+public final class CaptureReplayer {
+
+    /**
+     * Replays with the same spacing the messages originally arrived with
+     */
+    public static final double REAL_TIME = 1.0;
+
+    /**
+     * Replays as fast as the target accepts the messages
+     */
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+    private final CaptureReader reader;
+
+    public CaptureReplayer(Path directory) {
+        this.reader = new CaptureReader(directory);
+    }
+
+    /**
+     * Replays the messages captured in the given window to a listener, no broker is involved
+     * @param fromMillis inclusive start of the window in epoch milliseconds
+     * @param toMillis inclusive end of the window in epoch milliseconds
+     * @param speed 1 for real time, N for N times faster, {@link #MAX_SPEED} for no pacing at all
+     * @param messageListener the callback to hand every message to
+     * @return the number of messages replayed
+     * @throws IOException for problems encountered while reading the capture
+     */
+    public long replay(long fromMillis, long toMillis, double speed, IMqttMessageListener messageListener) throws IOException {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be positive: " + speed);
+        }
+        long[] replayed = new long[1];
+        long[] firstTimestamp = new long[1];
+        long startNanos = System.nanoTime();
+
+        this.reader.read(fromMillis, toMillis, message -> {
+            if (replayed[0] == 0) {
+                firstTimestamp[0] = message.getTimestamp();
+            } else if (!Double.isInfinite(speed)) {
+                long dueNanos = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(message.getTimestamp() - firstTimestamp[0]) / speed);
+                if (!sleepUntil(dueNanos)) {
+                    return false;
+                }
+            }
+            try {
+                messageListener.messageArrived(message.getTopic(), message.toMqttMessage());
+            } catch (Exception e) {
+                log.error(e.getMessage() + ", topic: " + message.getTopic(), e);
+            }
+            replayed[0]++;
+            return true;
+        });
+
+        log.info("Replayed " + replayed[0] + " captured messages");
+        return replayed[0];
+    }
+
+    /**
+     * Replays the whole capture to a listener
+     * @param speed 1 for real time, N for N times faster, {@link #MAX_SPEED} for no pacing at all
+     * @param messageListener the callback to hand every message to
+     * @return the number of messages replayed
+     * @throws IOException for problems encountered while reading the capture
+     */
+    public long replay(double speed, IMqttMessageListener messageListener) throws IOException {
+        return this.replay(Long.MIN_VALUE, Long.MAX_VALUE, speed, messageListener);
+    }
+
+    /**
+     * Replays the messages captured in the given window into the listeners registered on a subscriber,
+     * as if they had arrived from the broker
+     * @param fromMillis inclusive start of the window in epoch milliseconds
+     * @param toMillis inclusive end of the window in epoch milliseconds
+     * @param speed 1 for real time, N for N times faster, {@link #MAX_SPEED} for no pacing at all
+     * @param subscriber the subscriber whose listeners receive the messages
+     * @return the number of messages replayed
+     * @throws IOException for problems encountered while reading the capture
+     */
+    public long replayToSubscriber(long fromMillis, long toMillis, double speed, MQTTSubscriber subscriber) throws IOException {
+        return this.replay(fromMillis, toMillis, speed, subscriber::deliver);
+    }
+
+    /**
+     * Republishes the messages captured in the given window through a publisher
+     * @param fromMillis inclusive start of the window in epoch milliseconds
+     * @param toMillis inclusive end of the window in epoch milliseconds
+     * @param speed 1 for real time, N for N times faster, {@link #MAX_SPEED} for no pacing at all
+     * @param publisher the publisher to send the messages with
+     * @return the number of messages replayed
+     * @throws IOException for problems encountered while reading the capture
+     */
+    public long replayToPublisher(long fromMillis, long toMillis, double speed, IMQTTPublisher publisher) throws IOException {
+        return this.replay(fromMillis, toMillis, speed, publisher::publishMessage);
+    }
+
+    private static boolean sleepUntil(long dueNanos) {
+        long remaining;
+        while ((remaining = dueNanos - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -3,9 +3,12 @@ package com.mohey.mqtt.core;
  * @author Mohey El-Din Badr
  * @since 2020/12/28
  */
+import com.mohey.mqtt.model.Priority;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface IMQTTPublisher extends IMQTTClient{
 
     void publishMessage(String topic, String message, int qos, boolean retain) throws MqttException;
@@ -13,4 +16,12 @@ public interface IMQTTPublisher extends IMQTTClient{
     void publishMessage(String topic, String message) throws MqttException;
 
     void publishMessage(String topic, MqttMessage message) throws MqttException;
+
+    void publishMessage(String topic, String message, Priority priority) throws MqttException;
+
+    void publishMessage(String topic, MqttMessage message, Priority priority) throws MqttException;
+
+    boolean tryPublishMessage(String topic, MqttMessage message) throws MqttException;
+
+    CompletableFuture<Void> publishMessageAsync(String topic, MqttMessage message);
 }
@@ -27,5 +27,7 @@ public interface IMQTTSubscriber extends IMQTTClient{
 
     void unsubscribeMessage(String topic) throws MqttException;
 
+    void unsubscribeMessage(String topic, IMqttMessageListener messageListener) throws MqttException;
+
     void unsubscribeMessages(String[] topics) throws MqttException;
 }
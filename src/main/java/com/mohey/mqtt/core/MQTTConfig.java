@@ -32,6 +32,54 @@ public abstract class MQTTConfig {
     @Value("${mqtt.clientId:}")
     private String clientId;
 
+    @Value("${mqtt.connectRetryInterval:5000}")
+    private long connectRetryInterval;
+
+    @Value("${mqtt.failFastWhenDisconnected:false}")
+    private boolean failFastWhenDisconnected;
+
+    @Value("${mqtt.offlineQueueSize:1000}")
+    private int offlineQueueSize;
+
+    @Value("${mqtt.maxInflight:10}")
+    private int maxInflight;
+
+    @Value("${mqtt.lanes.reservedInflight:2}")
+    private int lanesReservedInflight;
+
+    @Value("${mqtt.lanes.queueSize:10000}")
+    private int lanesQueueSize;
+
+    @Value("${mqtt.rateLimit.rate:0}")
+    private double rateLimit;
+
+    @Value("${mqtt.rateLimit.burst:0}")
+    private double rateLimitBurst;
+
+    @Value("${mqtt.rateLimit.prefixes:}")
+    private String rateLimitPrefixes;
+
+    @Value("${mqtt.rateLimit.adaptive:false}")
+    private boolean rateLimitAdaptive;
+
+    @Value("${mqtt.rateLimit.minRate:10}")
+    private double rateLimitMinRate;
+
+    @Value("${mqtt.rateLimit.targetLatency:200}")
+    private long rateLimitTargetLatency;
+
+    @Value("${mqtt.capture.enabled:false}")
+    private boolean captureEnabled;
+
+    @Value("${mqtt.capture.directory:capture}")
+    private String captureDirectory;
+
+    @Value("${mqtt.capture.segmentSize:67108864}")
+    private int captureSegmentSize;
+
+    @Value("${mqtt.capture.indexInterval:4096}")
+    private int captureIndexInterval;
+
     private String TCP = "tcp://";
 
     private  String SSL = "ssl://";
@@ -5,15 +5,26 @@ package com.mohey.mqtt.core;
  * @since 2020/12/29
  */
 
+import com.mohey.mqtt.jfr.MQTTPublishEvent;
+import com.mohey.mqtt.model.Priority;
+import com.mohey.mqtt.ratelimit.PublishRateLimiter;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.paho.client.mqttv3.*;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 @Component
@@ -26,14 +37,28 @@ public final class MQTTPublisher extends MQTTConfig implements MqttCallbackExten
 
     private String clientId;
 
-    private final List<Runnable> onConnectRunnables = new ArrayList<>();
+    private final List<Runnable> onConnectRunnables = new CopyOnWriteArrayList<>();
 
-    private final List<Runnable> onDisconnectRunnables = new ArrayList<>();
+    private final List<Runnable> onDisconnectRunnables = new CopyOnWriteArrayList<>();
 
     private final ExecutorService onConnectExecutors = Executors.newFixedThreadPool(10);
 
     private final ExecutorService onDisconnectExecutors = Executors.newFixedThreadPool(10);
 
+    private final ScheduledExecutorService connectExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * Publishes made while the client is not connected, sent in order once it connects
+     */
+    private BlockingQueue<PendingPublish> pendingPublishes;
+
+    private final AtomicBoolean drainingPendingPublishes = new AtomicBoolean();
+
+    @Getter
+    private PublishRateLimiter rateLimiter;
+
+    private PublishLanes lanes;
+
     private MQTTPublisher() {
         instance = this;
     }
@@ -56,18 +81,89 @@ public final class MQTTPublisher extends MQTTConfig implements MqttCallbackExten
     public void publishMessage(String topic, String message) throws MqttException {
         MqttMessage mqttMessage = new MqttMessage(message.getBytes());
         mqttMessage.setQos(this.getQos());
-        this.mqttClient.publish(topic, mqttMessage);
+        this.publishMessage(topic, mqttMessage);
     }
 
     /**
-     *
+     * Publishes a message with {@link Priority#NORMAL}, waiting for a permit first when a publish rate limit is configured
      * @param topic String MQTT topic to publish the message on
      * @param message MqttMessage to be published
      * @throws MqttException for other errors encountered while publishing the message.
      */
     @Override
     public void publishMessage(String topic, MqttMessage message) throws MqttException {
-        this.mqttClient.publish(topic, message);
+        this.publishMessage(topic, message, Priority.NORMAL);
+    }
+
+    /**
+     * Publishes a string message with the default qos on the lane of the given priority
+     * @param topic String MQTT topic to publish the message on
+     * @param message String of the message to be delivered
+     * @param priority the lane to publish on
+     * @throws MqttException for other errors encountered while publishing the message.
+     */
+    @Override
+    public void publishMessage(String topic, String message, Priority priority) throws MqttException {
+        MqttMessage mqttMessage = new MqttMessage(message.getBytes());
+        mqttMessage.setQos(this.getQos());
+        this.publishMessage(topic, mqttMessage, priority);
+    }
+
+    /**
+     * Publishes a message on the lane of the given priority. {@link Priority#HIGH} messages skip the rate limits,
+     * others wait for a permit first when a publish rate limit is configured.
+     * @param topic String MQTT topic to publish the message on
+     * @param message MqttMessage to be published
+     * @param priority the lane to publish on
+     * @throws MqttException for other errors encountered while publishing the message.
+     */
+    @Override
+    public void publishMessage(String topic, MqttMessage message, Priority priority) throws MqttException {
+        MQTTPublishEvent event = this.beginPublishEvent(topic, message);
+        if(priority != Priority.HIGH && this.rateLimiter.isEnabled()){
+            try {
+                this.rateLimiter.acquire(topic);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MqttException(e);
+            }
+        }
+        this.publish(topic, message, priority, event);
+    }
+
+    /**
+     * Publishes a message only if the publish rate limit allows it right now
+     * @param topic String MQTT topic to publish the message on
+     * @param message MqttMessage to be published
+     * @return false if the message was not published because the rate limit was reached
+     * @throws MqttException for other errors encountered while publishing the message.
+     */
+    @Override
+    public boolean tryPublishMessage(String topic, MqttMessage message) throws MqttException {
+        if(!this.rateLimiter.tryAcquire(topic)){
+            return false;
+        }
+        this.publish(topic, message, Priority.NORMAL, this.beginPublishEvent(topic, message));
+        return true;
+    }
+
+    /**
+     * Publishes a message once the publish rate limit allows it, without blocking the caller
+     * @param topic String MQTT topic to publish the message on
+     * @param message MqttMessage to be published
+     * @return future completed when the message has been handed to the client,
+     * or completed exceptionally with the MqttException raised while publishing
+     */
+    @Override
+    public CompletableFuture<Void> publishMessageAsync(String topic, MqttMessage message) {
+        MQTTPublishEvent event = this.beginPublishEvent(topic, message);
+        return this.rateLimiter.acquireAsync(topic).thenRun(() -> {
+            try {
+                this.publish(topic, message, Priority.NORMAL, event);
+            } catch (MqttException e) {
+                throw new CompletionException(e);
+            }
+        });
     }
 
     /**
@@ -80,7 +176,125 @@ public final class MQTTPublisher extends MQTTConfig implements MqttCallbackExten
      */
     @Override
     public void publishMessage(String topic, String message, int qos, boolean retain) throws MqttException {
-        this.mqttClient.publish(topic, message.getBytes(), qos, retain);
+        MqttMessage mqttMessage = new MqttMessage(message.getBytes());
+        mqttMessage.setQos(qos);
+        mqttMessage.setRetained(retain);
+        this.publishMessage(topic, mqttMessage);
+    }
+
+    /**
+     * Publishes through the lanes once connected, queueing the message or failing fast before that
+     * depending on mqtt.failFastWhenDisconnected and mqtt.offlineQueueSize. While connected, a message
+     * goes to the lanes directly only once the offline queue is drained, otherwise it is queued behind it.
+     * {@link Priority#HIGH} messages do not wait for the offline queue to be drained.
+     */
+    private void publish(String topic, MqttMessage message, Priority priority, MQTTPublishEvent event) throws MqttException {
+        if(this.isConnected()){
+            if(priority == Priority.HIGH){
+                this.lanes.submit(priority, topic, message, event);
+                return;
+            }
+            synchronized (this.pendingPublishes){
+                if(this.pendingPublishes.isEmpty()){
+                    this.lanes.submit(priority, topic, message, event);
+                    return;
+                }
+            }
+        } else if(this.isFailFastWhenDisconnected() || this.getOfflineQueueSize() <= 0){
+            throw new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED);
+        }
+        if(!this.pendingPublishes.offer(new PendingPublish(topic, message, priority, event))){
+            throw this.isConnected() ? new PublishQueueFullException(priority)
+                    : new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED);
+        }
+        if(this.isConnected()){
+            this.onConnectExecutors.execute(this::drainPendingPublishes);
+        }
+    }
+
+    /**
+     * Sends the queued publishes, only one thread drains at a time so that their order is kept. A message is
+     * removed from the queue only once it is in the lanes, and direct publishes check the queue under the same
+     * lock, so none of them can overtake it.
+     */
+    private void drainPendingPublishes(){
+        do {
+            if(!this.drainingPendingPublishes.compareAndSet(false, true)){
+                return;
+            }
+            try {
+                boolean submitted = true;
+                while(submitted && this.isConnected()){
+                    submitted = this.submitPendingPublish();
+                }
+            } finally {
+                this.drainingPendingPublishes.set(false);
+            }
+        } while(this.isConnected() && !this.pendingPublishes.isEmpty());
+    }
+
+    /**
+     * @return false once the queue is empty or the head could not be submitted because the connection dropped
+     */
+    private boolean submitPendingPublish(){
+        synchronized (this.pendingPublishes){
+            PendingPublish pending = this.pendingPublishes.peek();
+            if(pending == null){
+                return false;
+            }
+            try {
+                this.lanes.submit(pending.priority, pending.topic, pending.message, pending.event);
+            } catch (MqttException e) {
+                if(!this.isConnected()){
+                    // Kept at the head of the queue, sent on reconnect
+                    return false;
+                }
+                log.error(e.getMessage() + ", topic: " + pending.topic, e);
+            }
+            this.pendingPublishes.remove();
+            return true;
+        }
+    }
+
+    /**
+     * Begins the {@link MQTTPublishEvent} of a publish when a running flight recording has it enabled
+     * @return the event, null when it is not recorded
+     */
+    private MQTTPublishEvent beginPublishEvent(String topic, MqttMessage message){
+        MQTTPublishEvent event = new MQTTPublishEvent();
+        if(!event.isEnabled()){
+            return null;
+        }
+        event.clientId = this.clientId;
+        event.topic = topic;
+        event.qos = message.getQos();
+        event.payloadSize = message.getPayload().length;
+        event.publishNanos = System.nanoTime();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Publishes through the client. When the delivery has to be observed, by the adaptive rate limit or by the
+     * {@link MQTTPublishEvent} begun on publish, a {@link PublishContext} travels as the token user context so that
+     * it can be completed on delivery.
+     */
+    private void send(String topic, MqttMessage message, MQTTPublishEvent event) throws MqttException {
+        try {
+            if(event == null && !this.rateLimiter.isAdaptive()){
+                this.mqttClient.publish(topic, message);
+                return;
+            }
+            if(event != null){
+                event.queueWait = System.nanoTime() - event.publishNanos;
+            }
+            this.mqttClient.publish(topic, message, new PublishContext(event), null);
+        } catch (MqttException e) {
+            if(e.getReasonCode() == MqttException.REASON_CODE_MAX_INFLIGHT){
+                this.rateLimiter.onRejected();
+            }
+            throw e;
+        }
     }
 
     /**
@@ -88,7 +302,21 @@ public final class MQTTPublisher extends MQTTConfig implements MqttCallbackExten
      */
     @Override
     public boolean isConnected() {
-        return this.mqttClient.isConnected();
+        return this.mqttClient != null && this.mqttClient.isConnected();
+    }
+
+    /**
+     * @return the number of publishes accepted but not handed to the client yet, waiting in the offline queue
+     * or in the lanes
+     */
+    public int getQueuedPublishes() {
+        int queued = this.pendingPublishes == null ? 0 : this.pendingPublishes.size();
+        if(this.lanes != null){
+            for(Priority priority : Priority.values()){
+                queued += this.lanes.getQueued(priority);
+            }
+        }
+        return queued;
     }
 
     /**
@@ -107,12 +335,19 @@ public final class MQTTPublisher extends MQTTConfig implements MqttCallbackExten
             serverURL = serverURL.replace(this.getTCP(), this.getSSL());
         }
         this.clientId = this.getClientId() + "_pub";
+        this.pendingPublishes = new ArrayBlockingQueue<>(Math.max(1, this.getOfflineQueueSize()));
+        this.rateLimiter = new PublishRateLimiter(this.getRateLimit(), this.getRateLimitBurst(),
+                PublishRateLimiter.parsePrefixRates(this.getRateLimitPrefixes()), this.isRateLimitAdaptive(),
+                this.getRateLimitMinRate(), this.getRateLimitTargetLatency(), this.getMaxInflight());
+        this.lanes = new PublishLanes(this::send, this::isConnected, this.getMaxInflight(),
+                this.getLanesReservedInflight(), this.getLanesQueueSize());
 
         MemoryPersistence memoryPersistence = new MemoryPersistence();
 
         MqttConnectOptions mqttConnectOptions = new MqttConnectOptions();
         mqttConnectOptions.setAutomaticReconnect(true);
         mqttConnectOptions.setCleanSession(true);
+        mqttConnectOptions.setMaxInflight(this.getMaxInflight());
         mqttConnectOptions.setWill("status/"+ clientId, "disconnected".getBytes(), this.getQos(), true);
         if(!this.getUsername().trim().isEmpty()){
             mqttConnectOptions.setUserName(this.getUsername());
@@ -124,8 +359,9 @@ public final class MQTTPublisher extends MQTTConfig implements MqttCallbackExten
         try {
             this.mqttClient = new MqttAsyncClient(serverURL, clientId, memoryPersistence);
             this.mqttClient.setCallback(this);
-            this.mqttClient.connect(mqttConnectOptions);
+            this.connect(mqttConnectOptions);
             Thread mqttClose = new Thread(() -> {
+                this.connectExecutor.shutdownNow();
                 try {
                     this.mqttClient.close();
                 } catch (MqttException e) {
@@ -139,6 +375,34 @@ public final class MQTTPublisher extends MQTTConfig implements MqttCallbackExten
         }
     }
 
+    /**
+     * Starts connecting without waiting for the broker. Automatic reconnect only takes over once a first
+     * connection was made, so failed initial attempts are retried every mqtt.connectRetryInterval ms.
+     */
+    private void connect(MqttConnectOptions mqttConnectOptions){
+        try {
+            this.mqttClient.connect(mqttConnectOptions, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken asyncActionToken) {
+                }
+
+                @Override
+                public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                    retryConnect(mqttConnectOptions, exception);
+                }
+            });
+        } catch (MqttException e) {
+            this.retryConnect(mqttConnectOptions, e);
+        }
+    }
+
+    private void retryConnect(MqttConnectOptions mqttConnectOptions, Throwable cause){
+        log.error("Connection to " + this.mqttClient.getServerURI() + " failed, retrying in " + this.getConnectRetryInterval() + " ms: " + cause.getMessage());
+        if(!this.connectExecutor.isShutdown()){
+            this.connectExecutor.schedule(() -> this.connect(mqttConnectOptions), this.getConnectRetryInterval(), TimeUnit.MILLISECONDS);
+        }
+    }
+
     /**
      * This method is called when the connection to the server is lost.
      *
@@ -201,6 +465,18 @@ public final class MQTTPublisher extends MQTTConfig implements MqttCallbackExten
     @Override
     public void deliveryComplete(IMqttDeliveryToken token) {
         log.info("Delivery Completed");
+        this.lanes.complete();
+        if(token.getUserContext() instanceof PublishContext){
+            PublishContext context = (PublishContext) token.getUserContext();
+            this.rateLimiter.onDelivered(System.nanoTime() - context.startNanos, this.mqttClient.getInFlightMessageCount());
+            if(context.event != null){
+                context.event.end();
+                if(context.event.shouldCommit()){
+                    context.event.messageId = token.getMessageId();
+                    context.event.commit();
+                }
+            }
+        }
     }
 
     /**
@@ -213,14 +489,20 @@ public final class MQTTPublisher extends MQTTConfig implements MqttCallbackExten
     public void connectComplete(boolean reconnect, String serverURI) {
         log.info("Connection Established: " + serverURI);
 
+        this.lanes.reset();
         this.onConnectExecutors.execute(()->{
+            MqttMessage status = new MqttMessage("connected".getBytes());
+            status.setQos(this.getQos());
+            status.setRetained(true);
             try {
-                this.mqttClient.publish("status/" + this.clientId, "connected".getBytes(), this.getQos(), true );
+                this.publishMessage("status/" + this.clientId, status, Priority.HIGH);
             } catch (MqttException e) {
                 log.error(e.getMessage(), e);
             }
         });
 
+        this.onConnectExecutors.execute(this::drainPendingPublishes);
+
         for(Runnable runnable: onConnectRunnables){
             this.onConnectExecutors.execute(runnable);
         }
@@ -242,4 +524,33 @@ public final class MQTTPublisher extends MQTTConfig implements MqttCallbackExten
     public void removeOnDisConnectTask(Runnable runnable){
         this.onDisconnectRunnables.remove(runnable);
     }
+
+    private static final class PublishContext {
+
+        private final long startNanos = System.nanoTime();
+
+        private final MQTTPublishEvent event;
+
+        private PublishContext(MQTTPublishEvent event) {
+            this.event = event;
+        }
+    }
+
+    private static final class PendingPublish {
+
+        private final String topic;
+
+        private final MqttMessage message;
+
+        private final Priority priority;
+
+        private final MQTTPublishEvent event;
+
+        private PendingPublish(String topic, MqttMessage message, Priority priority, MQTTPublishEvent event) {
+            this.topic = topic;
+            this.message = message;
+            this.priority = priority;
+            this.event = event;
+        }
+    }
 }
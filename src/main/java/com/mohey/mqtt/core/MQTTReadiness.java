@@ -0,0 +1,79 @@
+package com.mohey.mqtt.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ties the Spring Boot readiness state to the MQTT connections.
+ * <p>
+ * The clients connect in the background, so the application can finish starting before the broker
+ * is reachable. Readiness is held at {@link ReadinessState#REFUSING_TRAFFIC} until both the publisher
+ * and the subscriber are connected, and goes back to it whenever one of them loses its connection.
+ * Disable with mqtt.readiness.enabled=false.</p>
+ * @since 2026/10/19
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "mqtt.readiness.enabled", havingValue = "true", matchIfMissing = true)
+public class MQTTReadiness {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final IMQTTClient[] clients;
+
+    private boolean applicationReady;
+
+    private ReadinessState state = ReadinessState.REFUSING_TRAFFIC;
+
+    public MQTTReadiness(ApplicationEventPublisher eventPublisher, MQTTPublisher publisher, MQTTSubscriber subscriber) {
+        this.eventPublisher = eventPublisher;
+        this.clients = new IMQTTClient[]{publisher, subscriber};
+        publisher.addOnConnectTask(this::update);
+        publisher.addOnDisConnectTask(this::update);
+        subscriber.addOnConnectTask(this::update);
+        subscriber.addOnDisConnectTask(this::update);
+    }
+
+    /**
+     * @return true once both clients are connected
+     */
+    public boolean isConnected() {
+        for (IMQTTClient client : this.clients) {
+            if (!client.isConnected()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spring Boot declares the application ready once it has started, this holds it back while the clients
+     * are still connecting
+     */
+    @EventListener
+    public synchronized void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getSource() == this) {
+            return;
+        }
+        this.applicationReady = event.getState() == ReadinessState.ACCEPTING_TRAFFIC;
+        this.state = event.getState();
+        this.update();
+    }
+
+    private synchronized void update() {
+        if (!this.applicationReady) {
+            return;
+        }
+        ReadinessState next = this.isConnected() ? ReadinessState.ACCEPTING_TRAFFIC : ReadinessState.REFUSING_TRAFFIC;
+        if (next != this.state) {
+            this.state = next;
+            log.info("MQTT readiness: " + next);
+            AvailabilityChangeEvent.publish(this.eventPublisher, this, next);
+        }
+    }
+}
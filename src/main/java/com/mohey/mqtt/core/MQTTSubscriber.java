@@ -4,37 +4,85 @@ package com.mohey.mqtt.core;
  * @since 2020/12/28
  */
 
+import com.mohey.mqtt.aggregation.WindowListener;
+import com.mohey.mqtt.aggregation.WindowedAggregator;
+import com.mohey.mqtt.capture.CaptureLog;
+import com.mohey.mqtt.jfr.MQTTListenerEvent;
+import com.mohey.mqtt.jfr.MQTTMessageArrivedEvent;
+import com.mohey.mqtt.jfr.MQTTResubscribeEvent;
 import com.mohey.mqtt.model.SubscribedTuple;
+import jdk.jfr.EventType;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.paho.client.mqttv3.*;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Component
 @Slf4j
 public final class MQTTSubscriber extends MQTTConfig implements MqttCallbackExtended, IMQTTSubscriber{
     
     private static MQTTSubscriber instance;
+
+    private static final EventType LISTENER_EVENT = EventType.getEventType(MQTTListenerEvent.class);
     @Getter
     private MqttClient mqttClient;
 
     private String clientId;
 
-    private final List<Runnable> onConnectRunnables = new ArrayList<>();
+    private final List<Runnable> onConnectRunnables = new CopyOnWriteArrayList<>();
 
-    private final List<Runnable> onDisconnectRunnables = new ArrayList<>();
+    private final List<Runnable> onDisconnectRunnables = new CopyOnWriteArrayList<>();
 
     private final ExecutorService onConnectExecutors = Executors.newFixedThreadPool(10);
 
     private final ExecutorService onDisconnectExecutors = Executors.newFixedThreadPool(10);
 
-    @Getter
-    private final Map<String, SubscribedTuple> subscribedTuples = new HashMap<>();
+    private final ScheduledExecutorService connectExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * Topic filter to immutable subscription snapshot, read without locking by the dispatchers and
+     * replaced under {@link #subscriptionLock} whenever a listener is added or removed
+     */
+    private final ConcurrentMap<String, SubscribedTuple> subscribedTuples = new ConcurrentHashMap<>();
+
+    /**
+     * Serialises registry updates with the matching broker subscribe and unsubscribe calls
+     */
+    private final Object subscriptionLock = new Object();
+
+    /**
+     * Listener standing in for subscriptions made without one, it hands the messages to the default handling
+     */
+    private final IMqttMessageListener defaultListener = this::logMessage;
+
+    private volatile CaptureLog captureLog;
+
+    /**
+     * Last message written to the capture log, Paho hands one arrival to the dispatcher of every matching
+     * filter as the same instance, so overlapping filters must not capture it again. Only used on the
+     * client callback thread.
+     */
+    private MqttMessage lastCaptured;
+
+    /**
+     * Last message recorded as a {@link MQTTMessageArrivedEvent}, for the same reason as {@link #lastCaptured}
+     * one arrival is recorded once whatever the number of filters it matches. Only used on the client callback thread.
+     */
+    private MqttMessage lastRecorded;
 
     private MQTTSubscriber(){
         instance = this;
@@ -48,6 +96,13 @@ public final class MQTTSubscriber extends MQTTConfig implements MqttCallbackExte
         return instance;
     }
 
+    /**
+     * @return read-only view of the current subscriptions keyed by topic filter
+     */
+    public Map<String, SubscribedTuple> getSubscribedTuples(){
+        return Collections.unmodifiableMap(this.subscribedTuples);
+    }
+
     /**
      * Subscribe to desired topic with default qos
      * @param topic String topic to subscribe to
@@ -59,16 +114,14 @@ public final class MQTTSubscriber extends MQTTConfig implements MqttCallbackExte
     }
 
     /**
-     * Subscribe to a topic provided qos
+     * Subscribe to a topic provided qos, arriving messages go to the default handling
      * @param topic String topic to subscribe to
      * @param qos int qos to subscribe ex.(qos=0,1,2)
      * @throws MqttException if there was an error registering the subscription.
      */
     @Override
     public void subscribeMessage(String topic, int qos) throws MqttException{
-        this.mqttClient.subscribe(topic,qos);
-        log.info("Subscribed to Topic: " + topic + ", Qos: " + this.getQos());
-        this.subscribedTuples.put(topic, new SubscribedTuple(topic, qos));
+        this.subscribeMessages(new String[]{topic}, new int[]{qos}, new IMqttMessageListener[]{this.defaultListener});
     }
 
     /**
@@ -83,17 +136,16 @@ public final class MQTTSubscriber extends MQTTConfig implements MqttCallbackExte
     }
 
     /**
-     *
+     * Adds a listener to a topic filter. Several listeners can share a filter, every one of them receives
+     * each matching message and the broker subscription is only made for the first one.
      * @param topic String topic to subscribe to
-     * @param qos int qos to subscribe ex.(qos=0,1,2)
+     * @param qos int qos to subscribe ex.(qos=0,1,2), the filter is subscribed with the highest qos asked by its listeners
      * @param messageListener a callback to handle incoming messages
      * @throws MqttException if there was an error registering the subscription.
      */
     @Override
     public void subscribeMessage(String topic, int qos, IMqttMessageListener messageListener) throws MqttException{
-        this.mqttClient.subscribe(topic, qos, messageListener);
-        log.info("Subscribed to Topic: " + topic + ", Qos: " + this.getQos() + ", MessageListener: " + messageListener.getClass().getName());
-        this.subscribedTuples.put(topic, new SubscribedTuple(topic, qos, messageListener));
+        this.subscribeMessages(new String[]{topic}, new int[]{qos}, new IMqttMessageListener[]{messageListener});
     }
 
     /**
@@ -116,11 +168,9 @@ public final class MQTTSubscriber extends MQTTConfig implements MqttCallbackExte
      */
     @Override
     public void subscribeMessages(String[] topics, int[] qos) throws MqttException{
-        this.mqttClient.subscribe(topics, qos);
-        log.info("Subscribed to mqtt topics");
-        for(int i=0; i< topics.length; i++){
-            this.subscribedTuples.put(topics[i], new SubscribedTuple(topics[i], qos[i]));
-        }
+        IMqttMessageListener[] messageListeners = new IMqttMessageListener[topics.length];
+        Arrays.fill(messageListeners, this.defaultListener);
+        this.subscribeMessages(topics, qos, messageListeners);
     }
 
     /**
@@ -137,7 +187,10 @@ public final class MQTTSubscriber extends MQTTConfig implements MqttCallbackExte
     }
 
     /**
-     * Subscribe to a group of topics providing qos and messageListeners for each topic
+     * Subscribe to a group of topics providing qos and messageListeners for each topic.
+     * Only the filters that are new, or whose qos has to be raised, are sent to the broker.
+     * Before the client is connected the subscriptions are only registered and made once it connects,
+     * unless mqtt.failFastWhenDisconnected is set.
      * @param topics String array of topics
      * @param qos int array of qos
      * @param messageListeners array of callbacks to handle incoming messages
@@ -145,44 +198,220 @@ public final class MQTTSubscriber extends MQTTConfig implements MqttCallbackExte
      */
     @Override
     public void subscribeMessages(String[] topics, int[] qos, IMqttMessageListener[] messageListeners) throws MqttException{
-        this.mqttClient.subscribe(topics, qos, messageListeners);
-        log.info("Subscribed to provided Topics");
-        for(int i=0; i<topics.length; i++){
-            this.subscribedTuples.put(topics[i], new SubscribedTuple(topics[i], qos[i], messageListeners[i]));
+        synchronized (this.subscriptionLock){
+            Map<String, SubscribedTuple> updated = new LinkedHashMap<>();
+            Set<String> brokerTopics = new LinkedHashSet<>();
+            for(int i=0; i<topics.length; i++){
+                IMqttMessageListener messageListener = messageListeners[i] == null ? this.defaultListener : messageListeners[i];
+                SubscribedTuple current = updated.getOrDefault(topics[i], this.subscribedTuples.get(topics[i]));
+                SubscribedTuple next = current == null
+                        ? new SubscribedTuple(topics[i], qos[i], messageListener)
+                        : current.withListener(qos[i], messageListener);
+                SubscribedTuple registered = this.subscribedTuples.get(topics[i]);
+                if(registered == null || registered.getQos() < next.getQos()){
+                    brokerTopics.add(topics[i]);
+                }
+                updated.put(topics[i], next);
+            }
+
+            // Registered ahead of the broker call, retained messages arrive as soon as the broker acknowledges
+            Map<String, SubscribedTuple> previous = new HashMap<>();
+            for(String topic : updated.keySet()){
+                previous.put(topic, this.subscribedTuples.get(topic));
+            }
+            this.subscribedTuples.putAll(updated);
+            if(!brokerTopics.isEmpty()){
+                try {
+                    if(this.isConnected()){
+                        this.subscribeBroker(brokerTopics.stream().map(updated::get).toArray(SubscribedTuple[]::new));
+                    } else if(this.isFailFastWhenDisconnected()){
+                        throw new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED);
+                    } else {
+                        log.info("Not connected, subscription deferred until connected: " + brokerTopics);
+                    }
+                } catch (MqttException | RuntimeException e) {
+                    for(Map.Entry<String, SubscribedTuple> entry : previous.entrySet()){
+                        if(entry.getValue() == null){
+                            this.subscribedTuples.remove(entry.getKey());
+                        } else {
+                            this.subscribedTuples.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    throw e;
+                }
+            }
         }
+        log.info("Subscribed to Topics: " + Arrays.toString(topics));
     }
 
     /**
-     * Unsubscribe to a given topic
+     * Unsubscribe to a given topic, removing every listener registered on it
      * @param topic String mqtt topic
      * @throws MqttException if there was an error unregistering the subscription.
      */
     @Override
     public void unsubscribeMessage(String topic) throws MqttException{
-        this.mqttClient.unsubscribe(topic);
-        this.subscribedTuples.remove(topic);
+        this.unsubscribeMessages(new String[]{topic});
+    }
+
+    /**
+     * Removes one listener from a topic filter, the broker subscription is dropped once no listener is left
+     * @param topic String mqtt topic
+     * @param messageListener the listener to remove
+     * @throws MqttException if there was an error unregistering the subscription.
+     */
+    @Override
+    public void unsubscribeMessage(String topic, IMqttMessageListener messageListener) throws MqttException{
+        synchronized (this.subscriptionLock){
+            SubscribedTuple current = this.subscribedTuples.get(topic);
+            if(current == null){
+                return;
+            }
+            SubscribedTuple next = current.withoutListener(messageListener);
+            if(next.getReferenceCount() == 0){
+                if(this.isConnected()){
+                    this.mqttClient.unsubscribe(topic);
+                }
+                this.subscribedTuples.remove(topic);
+            } else {
+                this.subscribedTuples.put(topic, next);
+            }
+        }
     }
 
     /**
-     * Unsubscribe to a group of topics
+     * Unsubscribe to a group of topics, removing every listener registered on them
      * @param topics String array of topics to unsubscribe
      * @throws MqttException if there was an error unregistering the subscription.
      */
     @Override
     public void unsubscribeMessages(String[] topics) throws MqttException{
-        this.mqttClient.unsubscribe(topics);
-        for(String topic : topics){
-            this.subscribedTuples.remove(topic);
+        synchronized (this.subscriptionLock){
+            if(this.isConnected()){
+                this.mqttClient.unsubscribe(topics);
+            }
+            for(String topic : topics){
+                this.subscribedTuples.remove(topic);
+            }
         }
     }
 
+    /**
+     * Subscribes a windowed aggregation stage to a topic filter, the samples of every matching topic are
+     * aggregated separately and only their statistics reach the listener when a window closes
+     * @param topic String topic filter to aggregate
+     * @param window the window length
+     * @param slide how often a window closes, equal to window for tumbling windows
+     * @param listener receives the statistics, see {@link WindowedAggregator#republishTo} to publish them instead
+     * @return the aggregator, to pass to {@link #unsubscribeAggregated}
+     * @throws MqttException if there was an error registering the subscription.
+     */
+    public WindowedAggregator subscribeAggregated(String topic, Duration window, Duration slide, WindowListener listener) throws MqttException{
+        WindowedAggregator aggregator = new WindowedAggregator(window, slide, WindowedAggregator.DEFAULT_RELATIVE_ACCURACY,
+                WindowedAggregator::parseDecimal, listener);
+        try {
+            this.subscribeMessage(topic, aggregator);
+        } catch (MqttException e) {
+            aggregator.close();
+            throw e;
+        }
+        return aggregator;
+    }
+
+    /**
+     * Removes an aggregation stage from a topic filter and stops its windows
+     * @param topic String topic filter the aggregator was subscribed to
+     * @param aggregator the aggregator returned by {@link #subscribeAggregated}
+     * @throws MqttException if there was an error unregistering the subscription.
+     */
+    public void unsubscribeAggregated(String topic, WindowedAggregator aggregator) throws MqttException{
+        try {
+            this.unsubscribeMessage(topic, aggregator);
+        } finally {
+            aggregator.close();
+        }
+    }
+
+    private void subscribeBroker(SubscribedTuple[] tuples) throws MqttException{
+        String[] topics = new String[tuples.length];
+        int[] qos = new int[tuples.length];
+        IMqttMessageListener[] dispatchers = new IMqttMessageListener[tuples.length];
+        for(int i=0; i<tuples.length; i++){
+            topics[i] = tuples[i].getTopic();
+            qos[i] = tuples[i].getQos();
+            dispatchers[i] = this.dispatcher(topics[i]);
+        }
+        this.mqttClient.subscribe(topics, qos, dispatchers);
+    }
+
+    /**
+     * @param filter the topic filter the broker subscription was made with
+     * @return the single listener given to the client for the filter, it fans out to the current snapshot of listeners
+     */
+    private IMqttMessageListener dispatcher(String filter){
+        return (topic, message) -> {
+            long arrivedNanos = System.nanoTime();
+            MQTTMessageArrivedEvent arrived = new MQTTMessageArrivedEvent();
+            if(arrived.isEnabled() && message != this.lastRecorded){
+                this.lastRecorded = message;
+                arrived.clientId = this.clientId;
+                arrived.filter = filter;
+                arrived.topic = topic;
+                arrived.qos = message.getQos();
+                arrived.duplicate = message.isDuplicate();
+                arrived.payloadSize = message.getPayload().length;
+                arrived.commit();
+            }
+
+            this.capture(topic, message);
+            SubscribedTuple tuple = this.subscribedTuples.get(filter);
+            if(tuple == null){
+                return;
+            }
+            if(LISTENER_EVENT.isEnabled()){
+                this.dispatchRecorded(tuple, topic, message, arrivedNanos);
+            } else {
+                tuple.dispatch(topic, message, (messageListener, e) -> this.logListenerError(topic, messageListener, e));
+            }
+        };
+    }
+
+    /**
+     * Same fan-out as {@link SubscribedTuple#dispatch}, recording a {@link MQTTListenerEvent} around every listener
+     */
+    private void dispatchRecorded(SubscribedTuple tuple, String topic, MqttMessage message, long arrivedNanos){
+        for(IMqttMessageListener messageListener : tuple.getMessageListeners()){
+            MQTTListenerEvent event = new MQTTListenerEvent();
+            event.dispatchWait = System.nanoTime() - arrivedNanos;
+            event.begin();
+            try {
+                messageListener.messageArrived(topic, message);
+            } catch (Exception e) {
+                event.failed = true;
+                this.logListenerError(topic, messageListener, e);
+            }
+            event.end();
+            if(event.shouldCommit()){
+                event.clientId = this.clientId;
+                event.filter = tuple.getTopic();
+                event.topic = topic;
+                event.listener = messageListener.getClass().getName();
+                event.commit();
+            }
+        }
+    }
+
+    private void logListenerError(String topic, IMqttMessageListener messageListener, Exception e){
+        log.error(e.getMessage() + ", topic: " + topic + ", MessageListener: " + messageListener.getClass().getName(), e);
+    }
+
     /**
      * Check if the MQTT Client is connected
      * @return boolean connected or not
      */
     @Override
     public boolean isConnected() {
-        return this.mqttClient.isConnected();
+        return this.mqttClient != null && this.mqttClient.isConnected();
     }
 
     /**
@@ -211,15 +440,25 @@ public final class MQTTSubscriber extends MQTTConfig implements MqttCallbackExte
             } catch (MqttException e) {
                 log.error(e.getMessage(), e);
             }
-            if(this.subscribedTuples.size() != 0){
+            MQTTResubscribeEvent event = new MQTTResubscribeEvent();
+            event.begin();
+            synchronized (this.subscriptionLock){
                 for(SubscribedTuple tuple : this.subscribedTuples.values()){
+                    event.filters++;
                     try {
-                        this.subscribeMessage(tuple.getTopic(), tuple.getQos(), tuple.getMessageListener());
+                        this.subscribeBroker(new SubscribedTuple[]{tuple});
                     } catch (MqttException e) {
+                        event.failures++;
                         log.error(e.getMessage() + ", topic: " + tuple.getTopic(), e);
                     }
                 }
             }
+            event.end();
+            if(event.shouldCommit()){
+                event.clientId = this.clientId;
+                event.reconnect = reconnect;
+                event.commit();
+            }
         });
 
         for(Runnable runnable : this.onConnectRunnables){
@@ -276,9 +515,74 @@ public final class MQTTSubscriber extends MQTTConfig implements MqttCallbackExte
      */
     @Override
     public void messageArrived(String topic, MqttMessage message) throws Exception{
+        this.capture(topic, message);
+        this.logMessage(topic, message);
+    }
+
+    /**
+     * Hands a message to the listeners subscribed to a matching topic filter without going through the broker,
+     * falling back to the default handling when no listener matches. Used to replay captured traffic.
+     * A listener that throws is logged and the remaining listeners still receive the message, as with live delivery.
+     * @param topic name of the topic the message belongs to
+     * @param message the message to deliver
+     */
+    public void deliver(String topic, MqttMessage message) {
+        boolean delivered = false;
+        for(SubscribedTuple tuple : this.subscribedTuples.values()){
+            if(MqttTopic.isMatched(tuple.getTopic(), topic)){
+                tuple.dispatch(topic, message, (messageListener, e) -> this.logListenerError(topic, messageListener, e));
+                delivered = true;
+            }
+        }
+        if(!delivered){
+            this.logMessage(topic, message);
+        }
+    }
+
+    private void logMessage(String topic, MqttMessage message){
         log.info("Topic: " + topic + ", " +
                 "Message: " + message.toString());
+    }
+
+    /**
+     * Starts appending every arriving message to a memory-mapped capture log in the given directory,
+     * the capture can later be fed back with {@link com.mohey.mqtt.capture.CaptureReplayer}
+     * @param directory the directory to write the capture segments to
+     * @throws IOException if the capture log could not be created
+     */
+    public synchronized void startCapture(Path directory) throws IOException {
+        this.stopCapture();
+        this.captureLog = new CaptureLog(directory, this.getCaptureSegmentSize(), this.getCaptureIndexInterval());
+        log.info("Capturing inbound messages to: " + directory.toAbsolutePath());
+    }
+
+    /**
+     * Stops capturing arriving messages and flushes the capture log
+     */
+    public synchronized void stopCapture() {
+        CaptureLog current = this.captureLog;
+        if(current == null){
+            return;
+        }
+        this.captureLog = null;
+        try {
+            current.close();
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
 
+    private void capture(String topic, MqttMessage message){
+        CaptureLog current = this.captureLog;
+        if(current == null || message == this.lastCaptured){
+            return;
+        }
+        this.lastCaptured = message;
+        try {
+            current.append(System.currentTimeMillis(), topic, message);
+        } catch (IOException e) {
+            log.error(e.getMessage() + ", topic: " + topic, e);
+        }
     }
 
     /**
@@ -317,16 +621,26 @@ public final class MQTTSubscriber extends MQTTConfig implements MqttCallbackExte
             mqttConnectOptions.setPassword(this.getPassword().toCharArray());
         }
 
+        if(this.isCaptureEnabled()){
+            try {
+                this.startCapture(Paths.get(this.getCaptureDirectory()));
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+
         try {
             this.mqttClient = new MqttClient(serverURL, this.clientId, memoryPersistence);
             this.mqttClient.setCallback(this);
-            this.mqttClient.connect(mqttConnectOptions);
+            this.connectExecutor.execute(() -> this.connect(mqttConnectOptions));
             Thread mqttClose = new Thread(() -> {
+                this.connectExecutor.shutdownNow();
                 try {
                     this.mqttClient.close();
                 } catch (MqttException e) {
                     log.error(e.getMessage(), e);
                 }
+                this.stopCapture();
             });
             Runtime.getRuntime().addShutdownHook(mqttClose);
 
@@ -336,6 +650,22 @@ public final class MQTTSubscriber extends MQTTConfig implements MqttCallbackExte
 
     }
 
+    /**
+     * Blocking connect run on the connect executor so that startup does not wait for the broker.
+     * Automatic reconnect only takes over once a first connection was made, so failed initial attempts
+     * are retried every mqtt.connectRetryInterval ms.
+     */
+    private void connect(MqttConnectOptions mqttConnectOptions){
+        try {
+            this.mqttClient.connect(mqttConnectOptions);
+        } catch (MqttException e) {
+            log.error("Connection to " + this.mqttClient.getServerURI() + " failed, retrying in " + this.getConnectRetryInterval() + " ms: " + e.getMessage());
+            if(!this.connectExecutor.isShutdown()){
+                this.connectExecutor.schedule(() -> this.connect(mqttConnectOptions), this.getConnectRetryInterval(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
     public void addOnConnectTask(Runnable runnable){
         this.onConnectRunnables.add(runnable);
     }
@@ -0,0 +1,185 @@
+package com.mohey.mqtt.core;
+
+import com.mohey.mqtt.jfr.MQTTPublishEvent;
+import com.mohey.mqtt.model.Priority;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.util.ArrayDeque;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Keeps the messages handed to the client within an in-flight window and queues the rest per {@link Priority},
+ * so that a burst of bulk messages waits here instead of in the client's single FIFO queue.
+ * <p>
+ * A publish is sent right away on the caller thread when its lane is empty and the window has room for it,
+ * otherwise it is queued. Every completed delivery frees a slot, which goes to the waiting lanes by smooth
+ * weighted round robin. Messages are picked and handed to the client under the same lock, so a lane is sent
+ * in the order it was submitted. Part of the window is reserved for {@link Priority#HIGH}, so control traffic always
+ * finds a slot even when bulk traffic fills the rest. A queued message the client refuses stays at the head of
+ * its lane and draining stops until the next completed delivery or reconnect.</p>
+ * @since 2026/10/19
+ */
+@Slf4j
+final class PublishLanes {
+
+    interface Sender {
+        void send(String topic, MqttMessage message, MQTTPublishEvent event) throws MqttException;
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final Sender sender;
+
+    private final BooleanSupplier connected;
+
+    private final int window;
+
+    private final int reserved;
+
+    private final int queueSize;
+
+    private final ArrayDeque<Pending>[] lanes;
+
+    private final int[] currentWeights = new int[PRIORITIES.length];
+
+    private int inFlight;
+
+    /**
+     * @param sender hands a message to the client
+     * @param connected whether queued messages can be sent
+     * @param window maximum number of messages handed to the client and not yet delivered
+     * @param reserved slots of the window only {@link Priority#HIGH} can use
+     * @param queueSize maximum number of messages waiting in each lane
+     */
+    @SuppressWarnings("unchecked")
+    PublishLanes(Sender sender, BooleanSupplier connected, int window, int reserved, int queueSize) {
+        this.sender = sender;
+        this.connected = connected;
+        this.window = Math.max(1, window);
+        this.reserved = Math.max(0, Math.min(reserved, this.window - 1));
+        this.queueSize = queueSize;
+        this.lanes = new ArrayDeque[PRIORITIES.length];
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            this.lanes[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Sends the message now if its lane has room in the window, queues it otherwise
+     * @param event the publish event begun when the message was published, null when not recorded
+     * @throws PublishQueueFullException if the lane queue is full
+     * @throws MqttException for errors raised by the client while sending
+     */
+    synchronized void submit(Priority priority, String topic, MqttMessage message, MQTTPublishEvent event) throws MqttException {
+        ArrayDeque<Pending> lane = this.lanes[priority.ordinal()];
+        if (!lane.isEmpty() || this.inFlight >= this.budget(priority)) {
+            if (lane.size() >= this.queueSize) {
+                throw new PublishQueueFullException(priority);
+            }
+            lane.add(new Pending(priority, topic, message, event));
+            return;
+        }
+        this.inFlight++;
+        try {
+            this.sender.send(topic, message, event);
+        } catch (MqttException e) {
+            this.inFlight--;
+            throw e;
+        }
+    }
+
+    /**
+     * Frees the slot of a delivered message and sends the next waiting one
+     */
+    synchronized void complete() {
+        this.release();
+        this.drain();
+    }
+
+    /**
+     * Forgets the messages in flight on a previous connection and starts sending the queued ones
+     */
+    synchronized void reset() {
+        this.inFlight = 0;
+        this.drain();
+    }
+
+    /**
+     * @return the number of messages waiting in the lane
+     */
+    synchronized int getQueued(Priority priority) {
+        return this.lanes[priority.ordinal()].size();
+    }
+
+    private synchronized void release() {
+        if (this.inFlight > 0) {
+            this.inFlight--;
+        }
+    }
+
+    private synchronized void drain() {
+        while (this.connected.getAsBoolean()) {
+            Pending pending = this.next();
+            if (pending == null) {
+                return;
+            }
+            this.inFlight++;
+            try {
+                this.sender.send(pending.topic, pending.message, pending.event);
+            } catch (MqttException e) {
+                // Keep the message at the head of its lane, the next complete() or reset() retries it
+                this.inFlight--;
+                this.lanes[pending.priority.ordinal()].addFirst(pending);
+                log.error(e.getMessage() + ", topic: " + pending.topic, e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Smooth weighted round robin over the lanes that have a message waiting and room in the window
+     */
+    private Pending next() {
+        int selected = -1;
+        int totalWeight = 0;
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            if (this.lanes[i].isEmpty() || this.inFlight >= this.budget(PRIORITIES[i])) {
+                continue;
+            }
+            this.currentWeights[i] += PRIORITIES[i].getWeight();
+            totalWeight += PRIORITIES[i].getWeight();
+            if (selected < 0 || this.currentWeights[i] > this.currentWeights[selected]) {
+                selected = i;
+            }
+        }
+        if (selected < 0) {
+            return null;
+        }
+        this.currentWeights[selected] -= totalWeight;
+        return this.lanes[selected].poll();
+    }
+
+    private int budget(Priority priority) {
+        return priority == Priority.HIGH ? this.window : this.window - this.reserved;
+    }
+
+    private static final class Pending {
+
+        private final Priority priority;
+
+        private final String topic;
+
+        private final MqttMessage message;
+
+        private final MQTTPublishEvent event;
+
+        private Pending(Priority priority, String topic, MqttMessage message, MQTTPublishEvent event) {
+            this.priority = priority;
+            this.topic = topic;
+            this.message = message;
+            this.event = event;
+        }
+    }
+}
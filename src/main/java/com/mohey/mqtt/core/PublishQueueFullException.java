@@ -0,0 +1,26 @@
+package com.mohey.mqtt.core;
+
+import com.mohey.mqtt.model.Priority;
+import lombok.Getter;
+import org.eclipse.paho.client.mqttv3.MqttException;
+
+/**
+ * Thrown when a publish finds its priority lane queue full (mqtt.lanes.queueSize), as opposed to the client's
+ * in-flight window being full, which Paho reports with {@link MqttException#REASON_CODE_MAX_INFLIGHT}
+ * @since 2026/10/19
+ */
+@Getter
+public class PublishQueueFullException extends MqttException {
+
+    private final Priority priority;
+
+    public PublishQueueFullException(Priority priority) {
+        super(MqttException.REASON_CODE_CLIENT_EXCEPTION);
+        this.priority = priority;
+    }
+
+    @Override
+    public String getMessage() {
+        return "Publish queue full for priority " + this.priority;
+    }
+}
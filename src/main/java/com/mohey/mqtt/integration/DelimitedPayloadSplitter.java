@@ -0,0 +1,38 @@
+package com.mohey.mqtt.integration;
+
+import org.springframework.integration.splitter.AbstractMessageSplitter;
+import org.springframework.messaging.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits a <code>byte[]</code> payload holding several records, such as a batch of newline separated samples,
+ * into one message per record. Empty records are dropped and headers are copied to every part.
+ * @since 2026/10/19
+ */
+public class DelimitedPayloadSplitter extends AbstractMessageSplitter {
+
+    private final byte delimiter;
+
+    public DelimitedPayloadSplitter(byte delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    @Override
+    protected Object splitMessage(Message<?> message) {
+        byte[] payload = (byte[]) message.getPayload();
+        List<byte[]> records = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= payload.length; i++) {
+            if (i == payload.length || payload[i] == this.delimiter) {
+                if (i > start) {
+                    records.add(Arrays.copyOfRange(payload, start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,61 @@
+package com.mohey.mqtt.integration;
+
+import org.springframework.integration.dsl.AggregatorSpec;
+import org.springframework.integration.dsl.IntegrationFlowBuilder;
+import org.springframework.integration.dsl.IntegrationFlows;
+import org.springframework.integration.dsl.MessageChannels;
+import org.springframework.integration.dsl.Pollers;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+
+import java.util.function.Consumer;
+
+/**
+ * Building blocks to declare MQTT processing pipelines with the Spring Integration DSL, e.g.
+ * <pre>
+ * MQTTFlows.from(new MQTTInboundChannelAdapter(subscriber, 1, "sensors/#"), 1000, 8)
+ *         .split(new DelimitedPayloadSplitter((byte) '\n'))
+ *         .aggregate(MQTTFlows.aggregateByTopic(100, 1000))
+ *         .transform(...)
+ *         .handle(new MQTTOutboundMessageHandler(publisher, "sensors/batched", 1))
+ *         .get();
+ * </pre>
+ * @since 2026/10/19
+ */
+public final class MQTTFlows {
+
+    private MQTTFlows() {
+    }
+
+    /**
+     * Starts a flow with the inbound adapter feeding a bounded queue channel, which blocks the adapter once full,
+     * drained into a {@link TopicPartitionedChannel} so that the rest of the flow runs in parallel across topics
+     * and in order within a topic. The partitions are bounded too, a slow stage fills them, then the queue, and
+     * finally blocks the adapter
+     * @param adapter the inbound adapter
+     * @param queueCapacity capacity of the bounded queue, and of each partition
+     * @param partitions number of partitions, and of threads, running the rest of the flow
+     * @return the flow builder to append the processing stages to
+     */
+    public static IntegrationFlowBuilder from(MQTTInboundChannelAdapter adapter, int queueCapacity, int partitions) {
+        return IntegrationFlows.from(adapter)
+                .channel(MessageChannels.queue(queueCapacity))
+                .bridge(bridge -> bridge.poller(Pollers.fixedDelay(1).maxMessagesPerPoll(-1)))
+                .channel(new TopicPartitionedChannel(partitions, queueCapacity));
+    }
+
+    /**
+     * Aggregator grouping the messages of each received topic, releasing a group when it reaches the batch size
+     * or, partially, when the timeout elapses since its first message
+     * @param batchSize number of messages released together
+     * @param timeoutMillis longest time a message waits in an incomplete group
+     * @return the aggregator configuration for {@link IntegrationFlowBuilder#aggregate(Consumer)}
+     */
+    public static Consumer<AggregatorSpec> aggregateByTopic(int batchSize, long timeoutMillis) {
+        return aggregator -> aggregator
+                .correlationStrategy(message -> message.getHeaders().get(MqttHeaders.RECEIVED_TOPIC))
+                .releaseStrategy(group -> group.size() >= batchSize)
+                .groupTimeout(timeoutMillis)
+                .sendPartialResultOnExpiry(true)
+                .expireGroupsUponCompletion(true);
+    }
+}
@@ -0,0 +1,78 @@
+package com.mohey.mqtt.integration;
+
+import com.mohey.mqtt.core.IMQTTSubscriber;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.springframework.integration.endpoint.MessageProducerSupport;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.MessagingException;
+
+/**
+ * Inbound channel adapter on top of {@link IMQTTSubscriber}: every message arriving on the topic filters is sent
+ * to the output channel as a <code>byte[]</code> payload with the received topic, qos, duplicate and retained headers.
+ * <p>
+ * The message is sent on the MQTT callback thread, so a bounded queue channel as output pushes back on the
+ * broker once it is full instead of piling messages up in memory.</p>
+ * @since 2026/10/19
+ */
+@Slf4j
+public class MQTTInboundChannelAdapter extends MessageProducerSupport {
+
+    private final IMQTTSubscriber subscriber;
+
+    private final String[] topics;
+
+    private final int qos;
+
+    private final IMqttMessageListener messageListener = this::messageArrived;
+
+    /**
+     * @param subscriber the subscriber to register on
+     * @param qos the qos to subscribe with
+     * @param topics the topic filters to subscribe to
+     */
+    public MQTTInboundChannelAdapter(IMQTTSubscriber subscriber, int qos, String... topics) {
+        this.subscriber = subscriber;
+        this.qos = qos;
+        this.topics = topics.clone();
+    }
+
+    @Override
+    public String getComponentType() {
+        return "mqtt:inbound-channel-adapter";
+    }
+
+    @Override
+    protected void doStart() {
+        for (String topic : this.topics) {
+            try {
+                this.subscriber.subscribeMessage(topic, this.qos, this.messageListener);
+            } catch (MqttException e) {
+                throw new MessagingException("Failed to subscribe to topic: " + topic, e);
+            }
+        }
+    }
+
+    @Override
+    protected void doStop() {
+        for (String topic : this.topics) {
+            try {
+                this.subscriber.unsubscribeMessage(topic, this.messageListener);
+            } catch (MqttException e) {
+                log.error(e.getMessage() + ", topic: " + topic, e);
+            }
+        }
+    }
+
+    private void messageArrived(String topic, MqttMessage message) {
+        this.sendMessage(MessageBuilder.withPayload(message.getPayload())
+                .setHeader(MqttHeaders.RECEIVED_TOPIC, topic)
+                .setHeader(MqttHeaders.RECEIVED_QOS, message.getQos())
+                .setHeader(MqttHeaders.DUPLICATE, message.isDuplicate())
+                .setHeader(MqttHeaders.RECEIVED_RETAINED, message.isRetained())
+                .build());
+    }
+}
@@ -0,0 +1,61 @@
+package com.mohey.mqtt.integration;
+
+import com.mohey.mqtt.core.MQTTPublisher;
+import com.mohey.mqtt.core.MQTTSubscriber;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.IntegrationFlows;
+import org.springframework.messaging.MessageChannel;
+
+/**
+ * Bridges the MQTT clients to Spring Integration when mqtt.integration.enabled is set.
+ * <p>
+ * Messages arriving on mqtt.integration.topics come out of {@link #INBOUND_CHANNEL}, after a bounded queue of
+ * mqtt.integration.queueCapacity messages and a {@link TopicPartitionedChannel} of mqtt.integration.partitions
+ * threads. Messages sent to {@link #OUTBOUND_CHANNEL} are published, on mqtt.integration.defaultTopic unless they
+ * carry a topic header.</p>
+ * @since 2026/10/19
+ */
+@Configuration
+@ConditionalOnProperty(name = "mqtt.integration.enabled", havingValue = "true")
+public class MQTTIntegrationConfiguration {
+
+    public static final String INBOUND_CHANNEL = "mqttInboundChannel";
+
+    public static final String OUTBOUND_CHANNEL = "mqttOutboundChannel";
+
+    @Value("${mqtt.integration.topics:}")
+    private String[] topics;
+
+    @Value("${mqtt.integration.queueCapacity:1000}")
+    private int queueCapacity;
+
+    @Value("${mqtt.integration.partitions:4}")
+    private int partitions;
+
+    @Value("${mqtt.integration.defaultTopic:}")
+    private String defaultTopic;
+
+    @Bean(name = OUTBOUND_CHANNEL)
+    public MessageChannel mqttOutboundChannel() {
+        return new DirectChannel();
+    }
+
+    @Bean
+    public IntegrationFlow mqttOutboundFlow(MQTTPublisher publisher) {
+        return IntegrationFlows.from(OUTBOUND_CHANNEL)
+                .handle(new MQTTOutboundMessageHandler(publisher, this.defaultTopic.isEmpty() ? null : this.defaultTopic, publisher.getQos()))
+                .get();
+    }
+
+    @Bean
+    public IntegrationFlow mqttInboundFlow(MQTTSubscriber subscriber) {
+        return MQTTFlows.from(new MQTTInboundChannelAdapter(subscriber, subscriber.getQos(), this.topics), this.queueCapacity, this.partitions)
+                .channel(INBOUND_CHANNEL)
+                .get();
+    }
+}
@@ -0,0 +1,83 @@
+package com.mohey.mqtt.integration;
+
+import com.mohey.mqtt.core.IMQTTPublisher;
+import com.mohey.mqtt.model.Priority;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.springframework.integration.handler.AbstractMessageHandler;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandlingException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Outbound channel adapter on top of {@link IMQTTPublisher}. The topic, qos, retained flag and {@link Priority}
+ * are taken from the {@link MqttHeaders#TOPIC}, {@link MqttHeaders#QOS}, {@link MqttHeaders#RETAINED} and
+ * {@link #PRIORITY} headers, falling back to the defaults of the handler. Payloads must be <code>byte[]</code>
+ * or <code>String</code>.
+ * @since 2026/10/19
+ */
+public class MQTTOutboundMessageHandler extends AbstractMessageHandler {
+
+    /**
+     * Header holding the {@link Priority} to publish with
+     */
+    public static final String PRIORITY = MqttHeaders.PREFIX + "priority";
+
+    private final IMQTTPublisher publisher;
+
+    private final String defaultTopic;
+
+    private final int defaultQos;
+
+    /**
+     * @param publisher the publisher to send with
+     * @param defaultTopic topic used when the message has no {@link MqttHeaders#TOPIC} header, may be null
+     * @param defaultQos qos used when the message has no {@link MqttHeaders#QOS} header
+     */
+    public MQTTOutboundMessageHandler(IMQTTPublisher publisher, String defaultTopic, int defaultQos) {
+        this.publisher = publisher;
+        this.defaultTopic = defaultTopic;
+        this.defaultQos = defaultQos;
+    }
+
+    @Override
+    public String getComponentType() {
+        return "mqtt:outbound-channel-adapter";
+    }
+
+    @Override
+    protected void handleMessageInternal(Message<?> message) {
+        String topic = message.getHeaders().get(MqttHeaders.TOPIC, String.class);
+        if (topic == null) {
+            topic = this.defaultTopic;
+        }
+        if (topic == null) {
+            throw new MessageHandlingException(message, "No topic header and no default topic");
+        }
+
+        MqttMessage mqttMessage = new MqttMessage(this.payload(message));
+        Integer qos = message.getHeaders().get(MqttHeaders.QOS, Integer.class);
+        mqttMessage.setQos(qos == null ? this.defaultQos : qos);
+        mqttMessage.setRetained(Boolean.TRUE.equals(message.getHeaders().get(MqttHeaders.RETAINED, Boolean.class)));
+        Priority priority = message.getHeaders().get(PRIORITY, Priority.class);
+
+        try {
+            this.publisher.publishMessage(topic, mqttMessage, priority == null ? Priority.NORMAL : priority);
+        } catch (MqttException e) {
+            throw new MessageHandlingException(message, "Failed to publish to topic: " + topic, e);
+        }
+    }
+
+    private byte[] payload(Message<?> message) {
+        Object payload = message.getPayload();
+        if (payload instanceof byte[]) {
+            return (byte[]) payload;
+        }
+        if (payload instanceof String) {
+            return ((String) payload).getBytes(StandardCharsets.UTF_8);
+        }
+        throw new MessageHandlingException(message, "Unsupported payload type: " + payload.getClass().getName());
+    }
+}
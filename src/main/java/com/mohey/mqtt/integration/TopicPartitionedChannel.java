@@ -0,0 +1,142 @@
+package com.mohey.mqtt.integration;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.integration.channel.AbstractSubscribableChannel;
+import org.springframework.integration.dispatcher.MessageDispatcher;
+import org.springframework.integration.dispatcher.UnicastingDispatcher;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Executor channel split into partitions, each served by its own single thread. Messages with the same
+ * partition key, by default the received topic, always go to the same partition, so they are handled in
+ * arrival order while different topics are handled in parallel. Each partition queues at most a bounded number of
+ * messages, once full {@link #send(Message)} blocks until the partition catches up.
+ * @since 2026/10/19
+ */
+public class TopicPartitionedChannel extends AbstractSubscribableChannel implements DisposableBean {
+
+    private static final int DEFAULT_CAPACITY = 1000;
+
+    private final PartitionedDispatcher dispatcher;
+
+    /**
+     * @param partitions number of partitions, and of threads
+     */
+    public TopicPartitionedChannel(int partitions) {
+        this(partitions, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param partitions number of partitions, and of threads
+     * @param capacity number of messages each partition queues before senders block
+     */
+    public TopicPartitionedChannel(int partitions, int capacity) {
+        this(partitions, capacity, message -> message.getHeaders().get(MqttHeaders.RECEIVED_TOPIC));
+    }
+
+    /**
+     * @param partitions number of partitions, and of threads
+     * @param capacity number of messages each partition queues before senders block
+     * @param partitionKey extracts the key messages are partitioned by, a null key goes to the first partition
+     */
+    public TopicPartitionedChannel(int partitions, int capacity, Function<Message<?>, Object> partitionKey) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("partitions must be positive: " + partitions);
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.dispatcher = new PartitionedDispatcher(partitions, capacity, partitionKey);
+    }
+
+    @Override
+    protected MessageDispatcher getDispatcher() {
+        return this.dispatcher;
+    }
+
+    @Override
+    public void destroy() {
+        for (ThreadPoolExecutor executor : this.dispatcher.executors) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Waits for room in the partition queue instead of rejecting, so the backpressure reaches the sender
+     */
+    private static final RejectedExecutionHandler BLOCK_WHEN_FULL = (task, executor) -> {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Partition shut down");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted waiting for room in the partition", e);
+        }
+    };
+
+    private static final class PartitionedDispatcher implements MessageDispatcher {
+
+        private final Function<Message<?>, Object> partitionKey;
+
+        private final ThreadPoolExecutor[] executors;
+
+        private final UnicastingDispatcher[] partitions;
+
+        private PartitionedDispatcher(int partitions, int capacity, Function<Message<?>, Object> partitionKey) {
+            this.partitionKey = partitionKey;
+            this.executors = new ThreadPoolExecutor[partitions];
+            this.partitions = new UnicastingDispatcher[partitions];
+            for (int i = 0; i < partitions; i++) {
+                String name = "mqtt-partition-" + i;
+                this.executors[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(capacity), runnable -> {
+                            Thread thread = new Thread(runnable, name);
+                            thread.setDaemon(true);
+                            return thread;
+                        }, BLOCK_WHEN_FULL);
+                this.partitions[i] = new UnicastingDispatcher(this.executors[i]);
+            }
+        }
+
+        @Override
+        public boolean addHandler(MessageHandler handler) {
+            boolean added = false;
+            for (UnicastingDispatcher partition : this.partitions) {
+                added |= partition.addHandler(handler);
+            }
+            return added;
+        }
+
+        @Override
+        public boolean removeHandler(MessageHandler handler) {
+            boolean removed = false;
+            for (UnicastingDispatcher partition : this.partitions) {
+                removed |= partition.removeHandler(handler);
+            }
+            return removed;
+        }
+
+        @Override
+        public boolean dispatch(Message<?> message) {
+            Object key = this.partitionKey.apply(message);
+            int partition = key == null ? 0 : Math.floorMod(key.hashCode(), this.partitions.length);
+            return this.partitions[partition].dispatch(message);
+        }
+
+        @Override
+        public int getHandlerCount() {
+            return this.partitions[0].getHandlerCount();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.mohey.mqtt.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Spans one listener handling one message
+ * @since 2026/10/19
+ */
+@Name("com.mohey.mqtt.Listener")
+@Label("MQTT Listener")
+@Description("Time spent by a message listener handling a message")
+@Category({"MQTT", "Subscriber"})
+@StackTrace(false)
+public class MQTTListenerEvent extends Event {
+
+    @Label("Client Id")
+    public String clientId;
+
+    @Label("Topic Filter")
+    public String filter;
+
+    @Label("Topic")
+    public String topic;
+
+    @Label("Listener")
+    public String listener;
+
+    @Label("Dispatch Wait")
+    @Description("Time between the message arriving and this listener starting, including the listeners run before it")
+    @Timespan(Timespan.NANOSECONDS)
+    public long dispatchWait;
+
+    @Label("Failed")
+    public boolean failed;
+}
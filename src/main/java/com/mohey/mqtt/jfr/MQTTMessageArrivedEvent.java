@@ -0,0 +1,42 @@
+package com.mohey.mqtt.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Marks a message handed to the subscriber by the client, before any listener runs. Recorded once per arrival,
+ * also when the message matches several subscribed filters.
+ * @since 2026/10/19
+ */
+@Name("com.mohey.mqtt.MessageArrived")
+@Label("MQTT Message Arrived")
+@Description("A message arrived from the broker on a subscribed topic filter")
+@Category({"MQTT", "Subscriber"})
+@StackTrace(false)
+public class MQTTMessageArrivedEvent extends Event {
+
+    @Label("Client Id")
+    public String clientId;
+
+    @Label("Topic Filter")
+    @Description("The first subscribed filter the message was dispatched to")
+    public String filter;
+
+    @Label("Topic")
+    public String topic;
+
+    @Label("QoS")
+    public int qos;
+
+    @Label("Duplicate")
+    public boolean duplicate;
+
+    @Label("Payload Size")
+    @DataAmount
+    public int payloadSize;
+}
@@ -0,0 +1,51 @@
+package com.mohey.mqtt.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Spans a publish from the call to the publisher until delivery is complete
+ * (handed to the network for QoS 0, PUBACK for QoS 1, PUBCOMP for QoS 2), the part spent waiting in the publisher
+ * before the message reaches the client is recorded apart
+ * @since 2026/10/19
+ */
+@Name("com.mohey.mqtt.Publish")
+@Label("MQTT Publish")
+@Description("Time from publishing a message until its delivery is complete")
+@Category({"MQTT", "Publisher"})
+@StackTrace(false)
+public class MQTTPublishEvent extends Event {
+
+    @Label("Client Id")
+    public String clientId;
+
+    @Label("Topic")
+    public String topic;
+
+    @Label("QoS")
+    public int qos;
+
+    @Label("Message Id")
+    @Description("Id of the delivery token, 0 for QoS 0")
+    public int messageId;
+
+    @Label("Payload Size")
+    @DataAmount
+    public int payloadSize;
+
+    @Label("Queue Wait")
+    @Description("Time between publishing and handing the message to the client, spent on the rate limit, the offline queue and the lane")
+    @Timespan(Timespan.NANOSECONDS)
+    public long queueWait;
+
+    /**
+     * When the message was published, not recorded
+     */
+    public transient long publishNanos;
+}
@@ -0,0 +1,32 @@
+package com.mohey.mqtt.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Spans the resubscription of every registered topic filter after the subscriber (re)connects
+ * @since 2026/10/19
+ */
+@Name("com.mohey.mqtt.Resubscribe")
+@Label("MQTT Resubscribe")
+@Description("Time taken to restore the subscriptions after a connection")
+@Category({"MQTT", "Subscriber"})
+@StackTrace(false)
+public class MQTTResubscribeEvent extends Event {
+
+    @Label("Client Id")
+    public String clientId;
+
+    @Label("Reconnect")
+    public boolean reconnect;
+
+    @Label("Topic Filters")
+    public int filters;
+
+    @Label("Failures")
+    public int failures;
+}
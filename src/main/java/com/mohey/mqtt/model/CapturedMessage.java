@@ -0,0 +1,31 @@
+package com.mohey.mqtt.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * A single inbound message as it was recorded by the capture log
+ * @since 2026/10/19
+ */
+@Getter
+@AllArgsConstructor
+public class CapturedMessage {
+
+    private final long timestamp;
+
+    private final String topic;
+
+    private final int qos;
+
+    private final byte[] payload;
+
+    /**
+     * @return a new MqttMessage carrying the captured payload and qos
+     */
+    public MqttMessage toMqttMessage() {
+        MqttMessage message = new MqttMessage(this.payload);
+        message.setQos(this.qos);
+        return message;
+    }
+}
@@ -0,0 +1,31 @@
+package com.mohey.mqtt.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Publish priority, each priority is a lane of the publisher with its own queue.
+ * When several lanes have messages waiting, a free in-flight slot goes to them in proportion to their weight.
+ * @since 2026/10/19
+ */
+@Getter
+@AllArgsConstructor
+public enum Priority {
+
+    /**
+     * Control and status traffic, may also use the in-flight slots reserved for it and bypasses the rate limits
+     */
+    HIGH(8),
+
+    /**
+     * Default priority of every publish
+     */
+    NORMAL(4),
+
+    /**
+     * Bulk traffic such as telemetry
+     */
+    LOW(1);
+
+    private final int weight;
+}
@@ -1,27 +1,120 @@
 package com.mohey.mqtt.model;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
 
 /**
+ * Immutable snapshot of a topic filter subscription and the listeners fanned out to.
+ * Changes produce a new tuple so that message dispatch can iterate the listeners without locking.
  * @author Mohey El-Din Badr
  * @date 2021/1/1
  */
-@Getter
-@AllArgsConstructor
-@RequiredArgsConstructor
-public class SubscribedTuple {
+public final class SubscribedTuple {
 
+    @Getter
     @NonNull
-    private String topic;
+    private final String topic;
 
-    @NonNull
-    private int qos;
+    @Getter
+    private final int qos;
+
+    private final IMqttMessageListener[] messageListeners;
+
+    public SubscribedTuple(@NonNull String topic, int qos, @NonNull IMqttMessageListener messageListener) {
+        this(topic, qos, new IMqttMessageListener[]{messageListener});
+    }
+
+    private SubscribedTuple(String topic, int qos, IMqttMessageListener[] messageListeners) {
+        this.topic = topic;
+        this.qos = qos;
+        this.messageListeners = messageListeners;
+    }
+
+    /**
+     * @return read-only view of the listeners subscribed to this topic filter
+     */
+    public List<IMqttMessageListener> getMessageListeners() {
+        return Collections.unmodifiableList(Arrays.asList(this.messageListeners));
+    }
+
+    /**
+     * @return the first listener subscribed to this topic filter, null if there is none
+     * @deprecated a filter can have several listeners, use {@link #getMessageListeners()}
+     */
+    @Deprecated
+    public IMqttMessageListener getMessageListener() {
+        return this.messageListeners.length == 0 ? null : this.messageListeners[0];
+    }
+
+    /**
+     * Hands a message to every listener of this snapshot in registration order
+     * @param topic name of the topic the message was published to
+     * @param message the arrived message
+     * @param onError called with the listener failure, the remaining listeners are still invoked
+     */
+    public void dispatch(String topic, MqttMessage message, BiConsumer<IMqttMessageListener, Exception> onError) {
+        for (IMqttMessageListener messageListener : this.messageListeners) {
+            try {
+                messageListener.messageArrived(topic, message);
+            } catch (Exception e) {
+                onError.accept(messageListener, e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of listeners holding this subscription, the broker subscription is dropped when it reaches zero
+     */
+    public int getReferenceCount() {
+        return this.messageListeners.length;
+    }
 
-    private IMqttMessageListener messageListener;
+    /**
+     * @param qos the qos requested by the new listener
+     * @param messageListener the listener to add, adding an already registered listener only upgrades the qos
+     * @return a copy of this tuple with the listener added and the highest of both qos values
+     */
+    public SubscribedTuple withListener(int qos, @NonNull IMqttMessageListener messageListener) {
+        int mergedQos = Math.max(this.qos, qos);
+        if (this.contains(messageListener)) {
+            return mergedQos == this.qos ? this : new SubscribedTuple(this.topic, mergedQos, this.messageListeners);
+        }
+        IMqttMessageListener[] listeners = Arrays.copyOf(this.messageListeners, this.messageListeners.length + 1);
+        listeners[this.messageListeners.length] = messageListener;
+        return new SubscribedTuple(this.topic, mergedQos, listeners);
+    }
+
+    /**
+     * @param messageListener the listener to remove
+     * @return a copy of this tuple without the listener, or this tuple if the listener was not registered
+     */
+    public SubscribedTuple withoutListener(IMqttMessageListener messageListener) {
+        for (int i = 0; i < this.messageListeners.length; i++) {
+            if (this.messageListeners[i].equals(messageListener)) {
+                IMqttMessageListener[] listeners = new IMqttMessageListener[this.messageListeners.length - 1];
+                System.arraycopy(this.messageListeners, 0, listeners, 0, i);
+                System.arraycopy(this.messageListeners, i + 1, listeners, i, listeners.length - i);
+                return new SubscribedTuple(this.topic, this.qos, listeners);
+            }
+        }
+        return this;
+    }
+
+    private boolean contains(IMqttMessageListener messageListener) {
+        for (IMqttMessageListener listener : this.messageListeners) {
+            if (listener.equals(messageListener)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
     @Override
     public boolean equals(Object o) {
@@ -32,14 +125,14 @@ public class SubscribedTuple {
 
         if (qos != tuple.qos) return false;
         if (!topic.equals(tuple.topic)) return false;
-        return messageListener != null ? messageListener.equals(tuple.messageListener) : tuple.messageListener == null;
+        return Arrays.equals(messageListeners, tuple.messageListeners);
     }
 
     @Override
     public int hashCode() {
         int result = topic.hashCode();
         result = 31 * result + qos;
-        result = 31 * result + (messageListener != null ? messageListener.hashCode() : 0);
+        result = 31 * result + Arrays.hashCode(messageListeners);
         return result;
     }
 }
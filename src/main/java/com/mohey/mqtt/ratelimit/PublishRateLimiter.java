@@ -0,0 +1,219 @@
+package com.mohey.mqtt.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits publishes with a token bucket for the whole client and one per configured topic prefix.
+ * A publish needs a token from the client bucket and from the bucket of its longest matching prefix.
+ * <p>
+ * In adaptive mode the client rate follows AIMD: every delivery whose PUBACK latency stays under the target,
+ * with the in-flight window not close to full, adds a little to the rate so that it grows by about 5% of the
+ * configured rate per second; a slow delivery, or a publish rejected by the in-flight limit, cuts it by 30%, at
+ * most once per observed latency. The rate stays between the configured minimum and the configured rate.</p>
+ * @since 2026/10/19
+ */
+@Slf4j
+public final class PublishRateLimiter {
+
+    private static final double DECREASE_FACTOR = 0.7;
+
+    private static final double INCREASE_PER_SECOND = 0.05;
+
+    private static final double INFLIGHT_THRESHOLD = 0.8;
+
+    private final TokenBucket clientBucket;
+
+    private final String[] prefixes;
+
+    private final TokenBucket[] prefixBuckets;
+
+    private final boolean adaptive;
+
+    private final double maxRate;
+
+    private final double minRate;
+
+    private final long targetLatencyNanos;
+
+    private final int inFlightThreshold;
+
+    private long lastDecreaseNanos = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+
+    /**
+     * @param rate messages per second for the whole client, 0 for no client limit
+     * @param burst messages that can be published back to back, 0 to use one second worth of rate
+     * @param prefixRates messages per second per topic prefix
+     * @param adaptive whether the client rate adapts to the acknowledgement latency and in-flight count
+     * @param minRate lowest client rate the adaptive mode goes down to
+     * @param targetLatencyMillis acknowledgement latency above which the adaptive mode slows down
+     * @param maxInflight the client in-flight window, the adaptive mode slows down when it is 80% full
+     */
+    public PublishRateLimiter(double rate, double burst, Map<String, Double> prefixRates, boolean adaptive,
+                              double minRate, long targetLatencyMillis, int maxInflight) {
+        this.clientBucket = rate > 0 ? new TokenBucket(rate, burst > 0 ? burst : rate) : null;
+        this.prefixes = prefixRates.keySet().stream()
+                .sorted(Comparator.comparingInt(String::length).reversed())
+                .toArray(String[]::new);
+        this.prefixBuckets = new TokenBucket[this.prefixes.length];
+        for (int i = 0; i < this.prefixes.length; i++) {
+            double prefixRate = prefixRates.get(this.prefixes[i]);
+            this.prefixBuckets[i] = new TokenBucket(prefixRate, burst > 0 ? Math.min(burst, prefixRate) : prefixRate);
+        }
+        if (adaptive && this.clientBucket == null) {
+            log.warn("Adaptive publish rate needs a client rate (mqtt.rateLimit.rate), adaptive mode disabled");
+        }
+        this.adaptive = adaptive && this.clientBucket != null;
+        this.maxRate = rate;
+        this.minRate = Math.max(1, Math.min(minRate, rate));
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+        this.inFlightThreshold = Math.max(1, (int) (maxInflight * INFLIGHT_THRESHOLD));
+    }
+
+    /**
+     * @param spec comma separated <code>prefix=rate</code> pairs, e.g. <code>telemetry/=500,commands/=50</code>
+     * @return the rate of every prefix in the order given
+     */
+    public static Map<String, Double> parsePrefixRates(String spec) {
+        Map<String, Double> prefixRates = new LinkedHashMap<>();
+        for (String entry : spec.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            int separator = entry.lastIndexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected prefix=rate, found: " + entry);
+            }
+            prefixRates.put(entry.substring(0, separator).trim(), Double.parseDouble(entry.substring(separator + 1).trim()));
+        }
+        return prefixRates;
+    }
+
+    /**
+     * @return false when neither a client rate nor a prefix rate is configured
+     */
+    public boolean isEnabled() {
+        return this.clientBucket != null || this.prefixes.length > 0;
+    }
+
+    public boolean isAdaptive() {
+        return this.adaptive;
+    }
+
+    /**
+     * @return the current client rate in messages per second, 0 when the client is not limited
+     */
+    public double getRate() {
+        return this.clientBucket == null ? 0 : this.clientBucket.getRate();
+    }
+
+    /**
+     * Waits until a publish on the topic is allowed
+     * @param topic the topic to publish on
+     * @throws InterruptedException if interrupted while waiting, the permit is lost
+     */
+    public void acquire(String topic) throws InterruptedException {
+        long waitNanos = this.reserve(topic);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * @param topic the topic to publish on
+     * @return true if a publish on the topic is allowed right now, in which case the permit is taken
+     */
+    public boolean tryAcquire(String topic) {
+        TokenBucket prefixBucket = this.prefixBucket(topic);
+        if (prefixBucket != null && !prefixBucket.tryAcquire()) {
+            return false;
+        }
+        if (this.clientBucket != null && !this.clientBucket.tryAcquire()) {
+            if (prefixBucket != null) {
+                prefixBucket.refund();
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param topic the topic to publish on
+     * @return future completed once a publish on the topic is allowed, without blocking the caller
+     */
+    public CompletableFuture<Void> acquireAsync(String topic) {
+        long waitNanos = this.reserve(topic);
+        if (waitNanos <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {
+        }, CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Feeds the adaptive mode with a completed delivery
+     * @param latencyNanos time between the publish and its acknowledgement
+     * @param inFlight messages still in flight on the client
+     */
+    public void onDelivered(long latencyNanos, int inFlight) {
+        if (!this.adaptive) {
+            return;
+        }
+        if (latencyNanos > this.targetLatencyNanos || inFlight >= this.inFlightThreshold) {
+            this.decrease(Math.max(latencyNanos, this.targetLatencyNanos));
+            return;
+        }
+        synchronized (this) {
+            double rate = this.clientBucket.getRate();
+            if (rate < this.maxRate) {
+                this.clientBucket.setRate(Math.min(this.maxRate, rate + this.maxRate * INCREASE_PER_SECOND / rate));
+            }
+        }
+    }
+
+    /**
+     * Tells the adaptive mode that the client refused a publish because its in-flight window is full
+     */
+    public void onRejected() {
+        if (this.adaptive) {
+            this.decrease(this.targetLatencyNanos);
+        }
+    }
+
+    private synchronized void decrease(long holdNanos) {
+        long now = System.nanoTime();
+        if (now - this.lastDecreaseNanos < holdNanos) {
+            return;
+        }
+        this.lastDecreaseNanos = now;
+        double rate = Math.max(this.minRate, this.clientBucket.getRate() * DECREASE_FACTOR);
+        this.clientBucket.setRate(rate);
+        log.debug("Publish rate decreased to " + rate + " msg/s");
+    }
+
+    private long reserve(String topic) {
+        long waitNanos = 0;
+        TokenBucket prefixBucket = this.prefixBucket(topic);
+        if (prefixBucket != null) {
+            waitNanos = prefixBucket.reserve();
+        }
+        if (this.clientBucket != null) {
+            waitNanos = Math.max(waitNanos, this.clientBucket.reserve());
+        }
+        return waitNanos;
+    }
+
+    private TokenBucket prefixBucket(String topic) {
+        for (int i = 0; i < this.prefixes.length; i++) {
+            if (topic.startsWith(this.prefixes[i])) {
+                return this.prefixBuckets[i];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,87 @@
+package com.mohey.mqtt.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket refilled continuously at a rate that can be changed while in use.
+ * <p>
+ * {@link #reserve()} always takes a token and returns how long the caller has to wait for it, letting the
+ * bucket go into debt, so blocking and asynchronous callers are served in arrival order.
+ * {@link #tryAcquire()} only takes a token that is available right now.</p>
+ * @since 2026/10/19
+ */
+public final class TokenBucket {
+
+    private final double burst;
+
+    private double rate;
+
+    private double tokens;
+
+    private long lastRefillNanos = System.nanoTime();
+
+    /**
+     * @param rate tokens added per second
+     * @param burst maximum number of tokens the bucket holds, at least one
+     */
+    public TokenBucket(double rate, double burst) {
+        if (!(rate > 0)) {
+            throw new IllegalArgumentException("rate must be positive: " + rate);
+        }
+        this.rate = rate;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+    }
+
+    /**
+     * @return true if a token was available and has been taken
+     */
+    public synchronized boolean tryAcquire() {
+        this.refill(System.nanoTime());
+        if (this.tokens < 1) {
+            return false;
+        }
+        this.tokens--;
+        return true;
+    }
+
+    /**
+     * Takes a token, borrowing against future refills if none is available
+     * @return nanoseconds the caller has to wait before using the token, 0 if it can be used now
+     */
+    public synchronized long reserve() {
+        this.refill(System.nanoTime());
+        this.tokens--;
+        return this.tokens >= 0 ? 0 : (long) (-this.tokens / this.rate * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Gives back a token taken by {@link #tryAcquire()} or {@link #reserve()} that ended up unused
+     */
+    public synchronized void refund() {
+        this.tokens = Math.min(this.burst, this.tokens + 1);
+    }
+
+    public synchronized double getRate() {
+        return this.rate;
+    }
+
+    /**
+     * @param rate the new number of tokens added per second, tokens accrued so far keep the old rate
+     */
+    public synchronized void setRate(double rate) {
+        if (!(rate > 0)) {
+            throw new IllegalArgumentException("rate must be positive: " + rate);
+        }
+        this.refill(System.nanoTime());
+        this.rate = rate;
+    }
+
+    private void refill(long nowNanos) {
+        long elapsed = nowNanos - this.lastRefillNanos;
+        if (elapsed > 0) {
+            this.tokens = Math.min(this.burst, this.tokens + elapsed * this.rate / TimeUnit.SECONDS.toNanos(1));
+            this.lastRefillNanos = nowNanos;
+        }
+    }
+}
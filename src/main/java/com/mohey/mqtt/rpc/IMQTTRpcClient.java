@@ -0,0 +1,19 @@
+package com.mohey.mqtt.rpc;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * @since 2026/10/19
+ */
+public interface IMQTTRpcClient {
+
+    CompletableFuture<byte[]> request(String topic, byte[] payload, Duration timeout);
+
+    void serve(String topic, Function<byte[], byte[]> handler) throws MqttException;
+
+    int getPendingRequests();
+}
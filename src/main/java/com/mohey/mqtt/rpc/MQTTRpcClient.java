@@ -0,0 +1,206 @@
+package com.mohey.mqtt.rpc;
+
+import com.mohey.mqtt.core.MQTTPublisher;
+import com.mohey.mqtt.core.MQTTSubscriber;
+import com.mohey.mqtt.model.Priority;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Request/response over MQTT.
+ * <p>
+ * Every request gets a correlation id and asks for its reply on <code>rpc/reply/&lt;clientId&gt;/&lt;correlationId&gt;</code>,
+ * so a single <code>rpc/reply/&lt;clientId&gt;/+</code> subscription serves all outstanding requests of this client.
+ * Timeouts are tracked on a {@link HashedTimerWheel}, which keeps tens of thousands of pending requests cheap.
+ * See {@link RpcEnvelope} for the request format expected by responders that do not use {@link #serve}.</p>
+ * <p>
+ * Futures are completed on the MQTT callback thread, or on the timer thread for timeouts, so dependent stages
+ * doing real work should use the async variants. Replies are published with {@link Priority#HIGH}, so a publish
+ * rate limit never blocks the callback thread serving the requests.</p>
+ * <p>
+ * Only created when mqtt.rpc.enabled is set, the timer wheel runs a thread ticking every mqtt.rpc.tickMillis.</p>
+ * @since 2026/10/19
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "mqtt.rpc.enabled", havingValue = "true")
+public final class MQTTRpcClient implements IMQTTRpcClient {
+
+    private static final String REPLY_TOPIC_PREFIX = "rpc/reply/";
+
+    private final MQTTPublisher publisher;
+
+    private final MQTTSubscriber subscriber;
+
+    private final HashedTimerWheel timer;
+
+    private final String replyTopic;
+
+    private final ConcurrentMap<String, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+
+    /**
+     * Random per instance, so that a late reply to a previous run on the same reply topic matches no request
+     */
+    private final String correlationPrefix = Long.toUnsignedString(UUID.randomUUID().getMostSignificantBits(), Character.MAX_RADIX) + "-";
+
+    private final AtomicLong correlationIds = new AtomicLong();
+
+    private final IMqttMessageListener replyListener = this::onReply;
+
+    private volatile boolean replySubscribed;
+
+    private volatile boolean closed;
+
+    public MQTTRpcClient(MQTTPublisher publisher, MQTTSubscriber subscriber,
+                         @Value("${mqtt.rpc.tickMillis:10}") long tickMillis,
+                         @Value("${mqtt.rpc.wheelSize:512}") int wheelSize) {
+        this.publisher = publisher;
+        this.subscriber = subscriber;
+        this.timer = new HashedTimerWheel(tickMillis, TimeUnit.MILLISECONDS, wheelSize, "mqtt-rpc-timer");
+        String clientId = subscriber.getClientId().trim().isEmpty() ? UUID.randomUUID().toString() : subscriber.getClientId();
+        this.replyTopic = REPLY_TOPIC_PREFIX + clientId + "/";
+    }
+
+    /**
+     * Publishes a request and waits asynchronously for its reply
+     * @param topic the topic the responder listens on
+     * @param payload the request payload
+     * @param timeout how long to wait for the reply before failing the future with a TimeoutException
+     * @return future completed with the reply payload
+     */
+    @Override
+    public CompletableFuture<byte[]> request(String topic, byte[] payload, Duration timeout) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        if (this.closed) {
+            future.completeExceptionally(new IllegalStateException("RPC client closed"));
+            return future;
+        }
+        try {
+            this.subscribeReplies();
+        } catch (MqttException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        String correlationId = this.correlationPrefix + Long.toString(this.correlationIds.incrementAndGet(), Character.MAX_RADIX);
+        PendingRequest pending = new PendingRequest(future);
+        this.pendingRequests.put(correlationId, pending);
+        try {
+            pending.timeout = this.timer.schedule(() -> {
+                if (this.pendingRequests.remove(correlationId, pending)) {
+                    future.completeExceptionally(new TimeoutException("No reply on topic " + topic + " within " + timeout.toMillis() + " ms"));
+                }
+            }, timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (IllegalStateException e) {
+            // closed concurrently, the timer no longer accepts timeouts
+            this.pendingRequests.remove(correlationId, pending);
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        MqttMessage message = new MqttMessage(new RpcEnvelope(this.replyTopic + correlationId, payload).encode());
+        message.setQos(this.publisher.getQos());
+        try {
+            this.publisher.publishMessage(topic, message);
+        } catch (MqttException e) {
+            if (this.pendingRequests.remove(correlationId, pending)) {
+                pending.timeout.cancel();
+                future.completeExceptionally(e);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Answers the requests published on a topic filter
+     * @param topic the topic filter to serve
+     * @param handler turns a request payload into the reply payload, a null reply sends nothing back
+     * @throws MqttException if there was an error registering the subscription.
+     */
+    @Override
+    public void serve(String topic, Function<byte[], byte[]> handler) throws MqttException {
+        this.subscriber.subscribeMessage(topic, (requestTopic, message) -> {
+            RpcEnvelope request = RpcEnvelope.decode(message.getPayload());
+            byte[] reply = handler.apply(request.getPayload());
+            if (reply != null) {
+                this.publisher.publishMessage(request.getReplyTopic(), this.reply(reply), Priority.HIGH);
+            }
+        });
+    }
+
+    /**
+     * @return the number of requests still waiting for a reply
+     */
+    @Override
+    public int getPendingRequests() {
+        return this.pendingRequests.size();
+    }
+
+    @PreDestroy
+    void close() {
+        this.closed = true;
+        this.timer.close();
+        for (PendingRequest pending : this.pendingRequests.values()) {
+            pending.future.completeExceptionally(new CancellationException("RPC client closed"));
+        }
+        this.pendingRequests.clear();
+    }
+
+    private MqttMessage reply(byte[] payload) {
+        MqttMessage message = new MqttMessage(payload);
+        message.setQos(this.publisher.getQos());
+        return message;
+    }
+
+    private void subscribeReplies() throws MqttException {
+        if (this.replySubscribed) {
+            return;
+        }
+        synchronized (this) {
+            if (!this.replySubscribed) {
+                this.subscriber.subscribeMessage(this.replyTopic + "+", this.replyListener);
+                this.replySubscribed = true;
+            }
+        }
+    }
+
+    private void onReply(String topic, MqttMessage message) {
+        PendingRequest pending = this.pendingRequests.remove(topic.substring(topic.lastIndexOf('/') + 1));
+        if (pending == null) {
+            log.debug("Dropped late or unknown reply on topic: " + topic);
+            return;
+        }
+        if (pending.timeout != null) {
+            pending.timeout.cancel();
+        }
+        pending.future.complete(message.getPayload());
+    }
+
+    private static final class PendingRequest {
+
+        private final CompletableFuture<byte[]> future;
+
+        private volatile HashedTimerWheel.Timeout timeout;
+
+        private PendingRequest(CompletableFuture<byte[]> future) {
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.mohey.mqtt.rpc;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format of a request. MQTT 3.1.1 has no response topic property, so the reply topic travels in front
+ * of the payload as <code>[unsigned short replyTopicLength][replyTopic UTF-8][payload]</code>.
+ * Replies are sent back as the bare response payload.
+ * @since 2026/10/19
+ */
+@Getter
+@AllArgsConstructor
+public final class RpcEnvelope {
+
+    private final String replyTopic;
+
+    private final byte[] payload;
+
+    /**
+     * @return the request bytes to publish
+     */
+    public byte[] encode() {
+        byte[] topic = this.replyTopic.getBytes(StandardCharsets.UTF_8);
+        if (topic.length > 0xFFFF) {
+            throw new IllegalArgumentException("Reply topic is too long: " + topic.length + " bytes");
+        }
+        return ByteBuffer.allocate(Short.BYTES + topic.length + this.payload.length)
+                .putShort((short) topic.length)
+                .put(topic)
+                .put(this.payload)
+                .array();
+    }
+
+    /**
+     * @param request the bytes of a request published by {@link MQTTRpcClient#request}
+     * @return the decoded reply topic and payload
+     * @throws IllegalArgumentException if the bytes are not a request envelope
+     */
+    public static RpcEnvelope decode(byte[] request) {
+        ByteBuffer buffer = ByteBuffer.wrap(request);
+        if (buffer.remaining() < Short.BYTES) {
+            throw new IllegalArgumentException("Request is too short to hold a reply topic");
+        }
+        int topicLength = buffer.getShort() & 0xFFFF;
+        if (buffer.remaining() < topicLength) {
+            throw new IllegalArgumentException("Request is too short for its reply topic: " + topicLength + " bytes");
+        }
+        String replyTopic = new String(request, Short.BYTES, topicLength, StandardCharsets.UTF_8);
+        byte[] payload = new byte[request.length - Short.BYTES - topicLength];
+        System.arraycopy(request, Short.BYTES + topicLength, payload, 0, payload.length);
+        return new RpcEnvelope(replyTopic, payload);
+    }
+}
@@ -0,0 +1,111 @@
+package com.mohey.mqtt.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantileSketchTests {
+
+    private static final double ACCURACY = 0.01;
+
+    private static final double[] QUANTILES = {0, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 1};
+
+    @Test
+    void staysWithinRelativeAccuracyForMixedSignData() {
+        Random random = new Random(42);
+        double[] samples = new double[10_000];
+        for (int i = 0; i < samples.length; i++) {
+            double magnitude = Math.exp(random.nextGaussian() * 5);
+            samples[i] = i % 5 == 0 ? 0 : random.nextBoolean() ? magnitude : -magnitude;
+        }
+        QuantileSketch sketch = new QuantileSketch(ACCURACY);
+        for (double sample : samples) {
+            sketch.add(sample);
+        }
+
+        assertEquals(samples.length, sketch.getCount());
+        assertWithinAccuracy(samples, sketch);
+    }
+
+    @Test
+    void mergeMatchesAddingAllSamplesToOneSketch() {
+        Random random = new Random(7);
+        QuantileSketch first = new QuantileSketch(ACCURACY);
+        QuantileSketch second = new QuantileSketch(ACCURACY);
+        QuantileSketch all = new QuantileSketch(ACCURACY);
+        for (int i = 0; i < 5_000; i++) {
+            double sample = (random.nextDouble() - 0.3) * 1000;
+            (i % 3 == 0 ? first : second).add(sample);
+            all.add(sample);
+        }
+
+        first.merge(second);
+
+        assertEquals(all.getCount(), first.getCount());
+        for (double quantile : QUANTILES) {
+            assertEquals(all.getQuantile(quantile), first.getQuantile(quantile), "quantile " + quantile);
+        }
+    }
+
+    @Test
+    void growsStoreTowardsHigherAndLowerBuckets() {
+        // Each value lands far outside the 64 buckets the store starts with, first upwards then downwards
+        double[] samples = {1, 1e6, 1e300, 1e-6, 1e-300, -1, -1e300, -1e-300};
+        QuantileSketch sketch = new QuantileSketch(ACCURACY);
+        for (double sample : samples) {
+            sketch.add(sample);
+        }
+
+        assertWithinAccuracy(samples, sketch);
+
+        QuantileSketch descending = new QuantileSketch(ACCURACY);
+        double[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            descending.add(sorted[i]);
+        }
+        assertWithinAccuracy(samples, descending);
+    }
+
+    @Test
+    void clearEmptiesTheSketch() {
+        QuantileSketch sketch = new QuantileSketch(ACCURACY);
+        sketch.add(5);
+        sketch.clear();
+
+        assertEquals(0, sketch.getCount());
+        assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+        sketch.add(-3);
+        assertEquals(-3, sketch.getQuantile(0.5), 3 * ACCURACY);
+    }
+
+    @Test
+    void rejectsNonFiniteValuesAndMismatchedMerges() {
+        QuantileSketch sketch = new QuantileSketch(ACCURACY);
+
+        assertThrows(IllegalArgumentException.class, () -> sketch.add(Double.NaN));
+        assertThrows(IllegalArgumentException.class, () -> sketch.add(Double.POSITIVE_INFINITY));
+        assertThrows(IllegalArgumentException.class, () -> sketch.add(Double.NEGATIVE_INFINITY));
+        assertThrows(IllegalArgumentException.class, () -> sketch.merge(new QuantileSketch(0.02)));
+        assertEquals(0, sketch.getCount());
+    }
+
+    /**
+     * Compares each quantile against the sample of the same rank, <code>quantile * (count - 1)</code> rounded down
+     */
+    private static void assertWithinAccuracy(double[] samples, QuantileSketch sketch) {
+        double[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        for (double quantile : QUANTILES) {
+            double expected = sorted[(int) Math.floor(quantile * (sorted.length - 1))];
+            double actual = sketch.getQuantile(quantile);
+            assertTrue(Math.abs(actual - expected) <= ACCURACY * Math.abs(expected),
+                    "quantile " + quantile + ": expected " + expected + ", got " + actual);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.mohey.mqtt.aggregation;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WindowedAggregatorTests {
+
+    /**
+     * Slides of 1000 days, so the aggregator thread never closes a window while a test runs and the tests drive
+     * {@link WindowedAggregator#closeWindows()} themselves
+     */
+    private static final Duration SLIDE = Duration.ofDays(1000);
+
+    private final List<WindowStatistics> closed = new ArrayList<>();
+
+    private WindowedAggregator aggregator;
+
+    @AfterEach
+    void closeAggregator() {
+        this.aggregator.close();
+    }
+
+    @Test
+    void samplesLeaveSlidingWindowAfterWindowOverSlideCloses() {
+        this.aggregator = new WindowedAggregator(SLIDE.multipliedBy(3), SLIDE, 0.01,
+                WindowedAggregator::parseDecimal, this.closed::add);
+
+        this.aggregator.add("t", 1);
+        this.aggregator.closeWindows();
+        this.aggregator.add("t", 2);
+        this.aggregator.closeWindows();
+        this.aggregator.add("t", 3);
+        this.aggregator.closeWindows();
+        this.aggregator.closeWindows();
+        this.aggregator.closeWindows();
+
+        assertEquals(5, this.closed.size());
+        assertWindow(this.closed.get(0), 1, 1, 1);
+        assertWindow(this.closed.get(1), 2, 1, 2);
+        assertWindow(this.closed.get(2), 3, 1, 3);
+        // The pane holding 1 was cleared when the third window closed
+        assertWindow(this.closed.get(3), 2, 2, 3);
+        assertWindow(this.closed.get(4), 1, 3, 3);
+        WindowStatistics last = this.closed.get(4);
+        assertEquals(SLIDE.multipliedBy(3).toMillis(), last.getWindowEnd() - last.getWindowStart());
+    }
+
+    @Test
+    void tumblingWindowsStartEmpty() {
+        this.aggregator = new WindowedAggregator(SLIDE, this.closed::add);
+
+        this.aggregator.add("t", 10);
+        this.aggregator.add("t", 20);
+        this.aggregator.closeWindows();
+        this.aggregator.add("t", 30);
+        this.aggregator.closeWindows();
+
+        assertEquals(2, this.closed.size());
+        assertWindow(this.closed.get(0), 2, 10, 20);
+        assertEquals(15, this.closed.get(0).getMean(), 1e-9);
+        assertWindow(this.closed.get(1), 1, 30, 30);
+    }
+
+    @Test
+    void retiresTopicsWithoutSamplesInAWholeWindow() {
+        this.aggregator = new WindowedAggregator(SLIDE.multipliedBy(2), SLIDE, 0.01,
+                WindowedAggregator::parseDecimal, this.closed::add);
+        this.aggregator.add("quiet", 1);
+        this.aggregator.add("busy", 1);
+        assertEquals(2, this.aggregator.getActiveTopics());
+
+        this.aggregator.closeWindows();
+        this.aggregator.add("busy", 2);
+        this.aggregator.closeWindows();
+        assertEquals(2, this.aggregator.getActiveTopics());
+        this.aggregator.closeWindows();
+
+        assertEquals(1, this.aggregator.getActiveTopics());
+        this.closed.clear();
+        this.aggregator.closeWindows();
+        assertEquals(0, this.aggregator.getActiveTopics());
+        assertTrue(this.closed.isEmpty());
+
+        // A retired topic starts over with fresh panes
+        this.aggregator.add("quiet", 5);
+        this.aggregator.closeWindows();
+        assertEquals(1, this.closed.size());
+        assertEquals("quiet", this.closed.get(0).getTopic());
+        assertWindow(this.closed.get(0), 1, 5, 5);
+    }
+
+    @Test
+    void countsNonFiniteAndUnparsableSamplesAsDropped() {
+        this.aggregator = new WindowedAggregator(SLIDE, this.closed::add);
+
+        for (String payload : new String[]{"NaN", "Infinity", "-Infinity", "1e999", "abc", " 4.5 "}) {
+            this.aggregator.messageArrived("t", new MqttMessage(payload.getBytes(StandardCharsets.US_ASCII)));
+        }
+        assertThrows(IllegalArgumentException.class, () -> this.aggregator.add("t", Double.NaN));
+        this.aggregator.closeWindows();
+
+        assertEquals(5, this.aggregator.getDroppedSamples());
+        assertEquals(1, this.closed.size());
+        assertWindow(this.closed.get(0), 1, 4.5, 4.5);
+    }
+
+    @Test
+    void keepsReportingWhenListenerThrows() {
+        this.aggregator = new WindowedAggregator(SLIDE, statistics -> {
+            this.closed.add(statistics);
+            throw new IllegalStateException("listener failed");
+        });
+        this.aggregator.add("a", 1);
+        this.aggregator.add("b", 2);
+
+        this.aggregator.closeWindows();
+
+        assertEquals(2, this.closed.size());
+    }
+
+    @Test
+    void rejectsSlideThatDoesNotDivideWindow() {
+        assertThrows(IllegalArgumentException.class, () -> new WindowedAggregator(Duration.ofSeconds(10),
+                Duration.ofSeconds(3), 0.01, WindowedAggregator::parseDecimal, this.closed::add));
+        this.aggregator = new WindowedAggregator(SLIDE, this.closed::add);
+    }
+
+    private static void assertWindow(WindowStatistics statistics, long count, double min, double max) {
+        assertEquals(count, statistics.getCount(), "count");
+        assertEquals(min, statistics.getMin(), "min");
+        assertEquals(max, statistics.getMax(), "max");
+    }
+}
@@ -0,0 +1,119 @@
+package com.mohey.mqtt.capture;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CaptureReaderTests {
+
+    /**
+     * Topic "t" and a 4 byte payload, 24 bytes with the length prefix
+     */
+    private static final int RECORD_SIZE = Integer.BYTES + CaptureLog.RECORD_HEADER + 1 + Integer.BYTES;
+
+    /**
+     * Five records per segment and an index entry every second record, so groups of three records sharing a
+     * timestamp straddle segments and start before the index entry carrying their timestamp
+     */
+    private static final int SEGMENT_SIZE = 5 * RECORD_SIZE;
+
+    private static final int INDEX_INTERVAL = 2 * RECORD_SIZE;
+
+    private static final int RECORDS = 30;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsEveryRecordAcrossSegmentsInOrder() throws IOException {
+        this.capture();
+
+        assertEquals(RECORDS / 5, CaptureReader.segments(this.directory).size());
+        assertEquals(range(0, RECORDS), this.read(Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    void windowStartingOnAnIndexedTimestampIncludesEarlierRecordsWithThatTimestamp() throws IOException {
+        this.capture();
+
+        for (int group = 0; group < RECORDS / 3; group++) {
+            assertEquals(range(3 * group, 3 * group + 3), this.read(timestamp(3 * group), timestamp(3 * group)),
+                    "group " + group);
+        }
+    }
+
+    @Test
+    void readsWindowSpanningSegments() throws IOException {
+        this.capture();
+
+        assertEquals(range(3, 12), this.read(timestamp(3), timestamp(11)));
+        assertEquals(range(6, RECORDS), this.read(timestamp(6) - 1, Long.MAX_VALUE));
+        assertEquals(List.of(), this.read(timestamp(RECORDS), Long.MAX_VALUE));
+    }
+
+    @Test
+    void rejectsRecordLargerThanSegmentAndKeepsCapturing() throws IOException {
+        try (CaptureLog log = new CaptureLog(this.directory, SEGMENT_SIZE, INDEX_INTERVAL)) {
+            assertThrows(IOException.class, () -> log.append(1000, "t", new MqttMessage(new byte[SEGMENT_SIZE])));
+            log.append(1000, "t", message(0));
+        }
+
+        assertEquals(List.of(0), this.read(Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    void continuesAfterExistingSegments() throws IOException {
+        this.capture();
+        try (CaptureLog log = new CaptureLog(this.directory, SEGMENT_SIZE, INDEX_INTERVAL)) {
+            log.append(timestamp(RECORDS), "t", message(RECORDS));
+        }
+
+        assertEquals(range(0, RECORDS + 1), this.read(Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    private void capture() throws IOException {
+        try (CaptureLog log = new CaptureLog(this.directory, SEGMENT_SIZE, INDEX_INTERVAL)) {
+            for (int i = 0; i < RECORDS; i++) {
+                log.append(timestamp(i), "t", message(i));
+            }
+        }
+        try (Stream<Path> files = Files.list(this.directory)) {
+            assertEquals(2 * RECORDS / 5, files.count());
+        }
+    }
+
+    private List<Integer> read(long fromMillis, long toMillis) throws IOException {
+        List<Integer> records = new ArrayList<>();
+        new CaptureReader(this.directory).read(fromMillis, toMillis,
+                message -> records.add(ByteBuffer.wrap(message.getPayload()).getInt()));
+        return records;
+    }
+
+    /**
+     * Records are stamped in groups of three sharing a timestamp
+     */
+    private static long timestamp(int record) {
+        return 1000 + 10 * (record / 3);
+    }
+
+    private static MqttMessage message(int record) {
+        return new MqttMessage(ByteBuffer.allocate(Integer.BYTES).putInt(record).array());
+    }
+
+    private static List<Integer> range(int from, int to) {
+        return IntStream.range(from, to).boxed().collect(Collectors.toList());
+    }
+}
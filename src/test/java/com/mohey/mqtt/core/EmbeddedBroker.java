@@ -0,0 +1,111 @@
+package com.mohey.mqtt.core;
+
+import com.hivemq.embedded.EmbeddedHiveMQ;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HiveMQ CE on a free localhost port for the tests, plus the Spring contexts of the clients connected to it
+ * @since 2026/10/19
+ */
+public final class EmbeddedBroker implements AutoCloseable {
+
+    private final int port;
+
+    private final EmbeddedHiveMQ hiveMQ;
+
+    private final List<AnnotationConfigApplicationContext> contexts = new ArrayList<>();
+
+    public EmbeddedBroker() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            this.port = socket.getLocalPort();
+        }
+        Path home = Files.createTempDirectory("mqtt-test-broker");
+        Path configuration = Files.createDirectories(home.resolve("conf"));
+        Files.write(configuration.resolve("config.xml"), ("<?xml version=\"1.0\"?>\n" +
+                "<hivemq>\n" +
+                "    <listeners>\n" +
+                "        <tcp-listener>\n" +
+                "            <port>" + this.port + "</port>\n" +
+                "            <bind-address>127.0.0.1</bind-address>\n" +
+                "        </tcp-listener>\n" +
+                "    </listeners>\n" +
+                "    <persistence>\n" +
+                "        <mode>in-memory</mode>\n" +
+                "    </persistence>\n" +
+                "    <anonymous-usage-statistics>\n" +
+                "        <enabled>false</enabled>\n" +
+                "    </anonymous-usage-statistics>\n" +
+                "</hivemq>\n").getBytes(StandardCharsets.UTF_8));
+        this.hiveMQ = EmbeddedHiveMQ.builder()
+                .withConfigurationFolder(configuration)
+                .withDataFolder(Files.createDirectories(home.resolve("data")))
+                .withExtensionsFolder(Files.createDirectories(home.resolve("extensions")))
+                .build();
+        this.hiveMQ.start().join();
+    }
+
+    public String getServerURI() {
+        return "tcp://127.0.0.1:" + this.port;
+    }
+
+    public int getPort() {
+        return this.port;
+    }
+
+    /**
+     * @param properties mqtt.* settings on top of the broker address and client id
+     * @return a connected subscriber in a context of its own
+     */
+    public MQTTSubscriber subscriber(String clientId, Map<String, Object> properties) throws InterruptedException {
+        MQTTSubscriber subscriber = this.client(MQTTSubscriber.class, clientId, properties);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!subscriber.isConnected()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Subscriber did not connect to " + this.getServerURI());
+            }
+            Thread.sleep(20);
+        }
+        return subscriber;
+    }
+
+    /**
+     * @param properties mqtt.* settings, the broker address and client id default to this broker and the given id
+     * @return a client in a context of its own, still connecting in the background
+     */
+    public <T extends MQTTConfig> T client(Class<T> type, String clientId, Map<String, Object> properties) {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("mqtt.brokerURL", "127.0.0.1");
+        settings.put("mqtt.port", this.port);
+        settings.put("mqtt.clientId", clientId);
+        settings.putAll(properties);
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", settings));
+        context.register(type);
+        context.refresh();
+        this.contexts.add(context);
+        return context.getBean(type);
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (AnnotationConfigApplicationContext context : this.contexts) {
+            IMQTTClient client = context.getBean(IMQTTClient.class);
+            if (client.isConnected()) {
+                client.disconnect();
+            }
+            context.close();
+        }
+        this.hiveMQ.close();
+    }
+}
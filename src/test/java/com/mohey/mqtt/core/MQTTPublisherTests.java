@@ -0,0 +1,107 @@
+package com.mohey.mqtt.core;
+
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MQTTPublisherTests {
+
+    private EmbeddedBroker broker;
+
+    private TcpForwarder forwarder;
+
+    private MqttClient client;
+
+    @BeforeEach
+    void startBroker() throws Exception {
+        this.broker = new EmbeddedBroker();
+        this.forwarder = new TcpForwarder(this.broker.getPort());
+        this.client = new MqttClient(this.broker.getServerURI(), "test-subscriber", new MemoryPersistence());
+        this.client.connect();
+    }
+
+    @AfterEach
+    void stopBroker() throws Exception {
+        this.client.disconnect();
+        this.client.close();
+        this.forwarder.close();
+        this.broker.close();
+    }
+
+    @Test
+    void sendsOfflineQueueInOrderAheadOfLaterPublishes() throws Exception {
+        int queued = 200;
+        int total = 400;
+        List<String> received = new ArrayList<>();
+        CountDownLatch delivered = new CountDownLatch(total);
+        this.client.subscribe("offline/#", 1, (topic, message) -> {
+            synchronized (received) {
+                received.add(new String(message.getPayload()));
+            }
+            delivered.countDown();
+        });
+        MQTTPublisher publisher = this.broker.client(MQTTPublisher.class, "offline", this.offline());
+
+        for (int i = 0; i < queued; i++) {
+            publisher.publishMessage("offline/queue", message(i));
+        }
+        assertFalse(publisher.isConnected());
+        assertEquals(queued, publisher.getQueuedPublishes());
+
+        this.forwarder.open();
+        while (!publisher.isConnected()) {
+            Thread.sleep(1);
+        }
+        for (int i = queued; i < total; i++) {
+            publisher.publishMessage("offline/queue", message(i));
+        }
+
+        assertTrue(delivered.await(10, TimeUnit.SECONDS), delivered.getCount() + " messages were not delivered");
+        assertEquals(IntStream.range(0, total).mapToObj(Integer::toString).collect(Collectors.toList()), received);
+    }
+
+    @Test
+    void failsFastWhileDisconnected() throws Exception {
+        Map<String, Object> properties = this.offline();
+        properties.put("mqtt.failFastWhenDisconnected", true);
+        MQTTPublisher publisher = this.broker.client(MQTTPublisher.class, "fail-fast", properties);
+
+        MqttException e = assertThrows(MqttException.class, () -> publisher.publishMessage("offline/queue", message(0)));
+        assertEquals(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED, e.getReasonCode());
+        assertEquals(0, publisher.getQueuedPublishes());
+    }
+
+    /**
+     * Settings of a client connecting through the forwarder, which stays offline until it is opened
+     */
+    private Map<String, Object> offline() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("mqtt.port", this.forwarder.getPort());
+        properties.put("mqtt.connectRetryInterval", 50);
+        return properties;
+    }
+
+    private static MqttMessage message(int sequence) {
+        MqttMessage message = new MqttMessage(Integer.toString(sequence).getBytes());
+        message.setQos(1);
+        return message;
+    }
+}
@@ -0,0 +1,63 @@
+package com.mohey.mqtt.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MQTTReadinessTests {
+
+    private EmbeddedBroker broker;
+
+    private TcpForwarder forwarder;
+
+    @BeforeEach
+    void startBroker() throws Exception {
+        this.broker = new EmbeddedBroker();
+        this.forwarder = new TcpForwarder(this.broker.getPort());
+    }
+
+    @AfterEach
+    void stopBroker() throws Exception {
+        this.forwarder.close();
+        this.broker.close();
+    }
+
+    @Test
+    void holdsReadinessUntilBothClientsConnect() throws Exception {
+        MQTTPublisher publisher = this.broker.client(MQTTPublisher.class, "ready", new HashMap<>());
+        Map<String, Object> offline = new HashMap<>();
+        offline.put("mqtt.port", this.forwarder.getPort());
+        offline.put("mqtt.connectRetryInterval", 50);
+        MQTTSubscriber subscriber = this.broker.client(MQTTSubscriber.class, "ready", offline);
+        List<ReadinessState> states = new CopyOnWriteArrayList<>();
+        MQTTReadiness readiness = new MQTTReadiness(event -> {
+            if (event instanceof AvailabilityChangeEvent) {
+                states.add((ReadinessState) ((AvailabilityChangeEvent<?>) event).getState());
+            }
+        }, publisher, subscriber);
+
+        readiness.onReadinessChange(new AvailabilityChangeEvent<>(this, ReadinessState.ACCEPTING_TRAFFIC));
+        assertFalse(readiness.isConnected());
+        assertEquals(List.of(ReadinessState.REFUSING_TRAFFIC), states);
+
+        this.forwarder.open();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (states.size() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(readiness.isConnected());
+        assertEquals(List.of(ReadinessState.REFUSING_TRAFFIC, ReadinessState.ACCEPTING_TRAFFIC), states);
+    }
+}
@@ -0,0 +1,118 @@
+package com.mohey.mqtt.core;
+
+import com.mohey.mqtt.capture.CaptureReader;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MQTTSubscriberTests {
+
+    private EmbeddedBroker broker;
+
+    private MqttClient client;
+
+    @BeforeEach
+    void startBroker() throws Exception {
+        this.broker = new EmbeddedBroker();
+        this.client = new MqttClient(this.broker.getServerURI(), "test-publisher", new MemoryPersistence());
+        this.client.connect();
+    }
+
+    @AfterEach
+    void stopBroker() throws Exception {
+        this.client.disconnect();
+        this.client.close();
+        this.broker.close();
+    }
+
+    @Test
+    void capturesMessageMatchingOverlappingFiltersOnce() throws Exception {
+        Path directory = Files.createTempDirectory("capture");
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("mqtt.capture.enabled", true);
+        properties.put("mqtt.capture.directory", directory.toString());
+        MQTTSubscriber subscriber = this.broker.subscriber("capture", properties);
+
+        CountDownLatch delivered = new CountDownLatch(2);
+        subscriber.subscribeMessage("sensors/#", 1, (topic, message) -> delivered.countDown());
+        subscriber.subscribeMessage("sensors/+", 1, (topic, message) -> delivered.countDown());
+        this.client.publish("sensors/temperature", "21.5".getBytes(), 1, false);
+
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        subscriber.stopCapture();
+        AtomicInteger captured = new AtomicInteger();
+        new CaptureReader(directory).read(message -> captured.incrementAndGet() > 0);
+        assertEquals(1, captured.get());
+    }
+
+    @Test
+    void deliversRetainedMessagesArrivingRightAfterSubscribe() throws Exception {
+        int topics = 100;
+        for (int i = 0; i < topics; i++) {
+            this.client.publish("retained/" + i, ("value " + i).getBytes(), 1, true);
+        }
+        MQTTSubscriber subscriber = this.broker.subscriber("retained", new HashMap<>());
+
+        CountDownLatch delivered = new CountDownLatch(topics);
+        for (int i = 0; i < topics; i++) {
+            subscriber.subscribeMessage("retained/" + i, 1, (topic, message) -> delivered.countDown());
+        }
+        assertTrue(delivered.await(10, TimeUnit.SECONDS), delivered.getCount() + " retained messages were not delivered");
+    }
+
+    @Test
+    void deliverKeepsFanningOutWhenAListenerThrows() throws Exception {
+        MQTTSubscriber subscriber = this.broker.subscriber("deliver", new HashMap<>());
+        AtomicInteger delivered = new AtomicInteger();
+        subscriber.subscribeMessage("replay/#", 1, (topic, message) -> {
+            throw new IllegalStateException("listener failed");
+        });
+        subscriber.subscribeMessage("replay/#", 1, (topic, message) -> delivered.incrementAndGet());
+        subscriber.subscribeMessage("replay/+", 1, (topic, message) -> delivered.incrementAndGet());
+
+        subscriber.deliver("replay/a", new MqttMessage("1".getBytes()));
+
+        assertEquals(2, delivered.get());
+    }
+
+    @Test
+    void recordsOneArrivedEventForMessageMatchingOverlappingFilters() throws Exception {
+        MQTTSubscriber subscriber = this.broker.subscriber("recorded", new HashMap<>());
+        CountDownLatch delivered = new CountDownLatch(2);
+        subscriber.subscribeMessage("devices/#", 1, (topic, message) -> delivered.countDown());
+        subscriber.subscribeMessage("devices/+", 1, (topic, message) -> delivered.countDown());
+
+        Path file = Files.createTempFile("arrived", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.mohey.mqtt.MessageArrived");
+            recording.start();
+            this.client.publish("devices/1", "on".getBytes(), 1, false);
+            assertTrue(delivered.await(10, TimeUnit.SECONDS));
+            recording.stop();
+            recording.dump(file);
+        }
+
+        long arrived = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> "com.mohey.mqtt.MessageArrived".equals(event.getEventType().getName()))
+                .filter(event -> "devices/1".equals(event.getString("topic")))
+                .count();
+        assertEquals(1, arrived);
+        Files.delete(file);
+    }
+}
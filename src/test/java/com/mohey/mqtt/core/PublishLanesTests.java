@@ -0,0 +1,94 @@
+package com.mohey.mqtt.core;
+
+import com.mohey.mqtt.jfr.MQTTPublishEvent;
+import com.mohey.mqtt.model.Priority;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PublishLanesTests {
+
+    private final List<String> sent = new ArrayList<>();
+
+    private boolean failing;
+
+    private final PublishLanes lanes = new PublishLanes(this::send, () -> true, 1, 0, 100);
+
+    @Test
+    void sendsEachLaneInSubmitOrder() throws Exception {
+        this.lanes.submit(Priority.NORMAL, "blocker", new MqttMessage(), null);
+        for (int i = 0; i < 5; i++) {
+            this.lanes.submit(Priority.LOW, "low/" + i, new MqttMessage(), null);
+            this.lanes.submit(Priority.NORMAL, "normal/" + i, new MqttMessage(), null);
+        }
+        for (int i = 0; i < 10; i++) {
+            this.lanes.complete();
+        }
+
+        assertEquals(List.of("normal/0", "normal/1", "normal/2", "normal/3", "normal/4"), this.sentOn("normal/"));
+        assertEquals(List.of("low/0", "low/1", "low/2", "low/3", "low/4"), this.sentOn("low/"));
+    }
+
+    @Test
+    void sharesFreeSlotsByLaneWeight() throws Exception {
+        this.lanes.submit(Priority.NORMAL, "blocker", new MqttMessage(), null);
+        for (int i = 0; i < 26; i++) {
+            this.lanes.submit(Priority.HIGH, "high/" + i, new MqttMessage(), null);
+            this.lanes.submit(Priority.NORMAL, "normal/" + i, new MqttMessage(), null);
+            this.lanes.submit(Priority.LOW, "low/" + i, new MqttMessage(), null);
+        }
+        this.sent.clear();
+        for (int i = 0; i < 26; i++) {
+            this.lanes.complete();
+        }
+
+        assertEquals(16, this.sentOn("high/").size());
+        assertEquals(8, this.sentOn("normal/").size());
+        assertEquals(2, this.sentOn("low/").size());
+    }
+
+    @Test
+    void keepsQueuedMessageWhenSendFails() throws Exception {
+        this.lanes.submit(Priority.NORMAL, "blocker", new MqttMessage(), null);
+        for (int i = 0; i < 14; i++) {
+            this.lanes.submit(Priority.NORMAL, "normal/" + i, new MqttMessage(), null);
+        }
+        this.failing = true;
+        this.lanes.complete();
+        assertEquals(14, this.lanes.getQueued(Priority.NORMAL));
+
+        this.failing = false;
+        this.lanes.reset();
+        assertEquals(13, this.lanes.getQueued(Priority.NORMAL));
+        assertEquals(List.of("normal/0"), this.sentOn("normal/"));
+    }
+
+    @Test
+    void rejectsSubmitWhenLaneIsFull() throws Exception {
+        PublishLanes small = new PublishLanes(this::send, () -> true, 1, 0, 1);
+        small.submit(Priority.LOW, "sent", new MqttMessage(), null);
+        small.submit(Priority.LOW, "queued", new MqttMessage(), null);
+
+        PublishQueueFullException e = assertThrows(PublishQueueFullException.class,
+                () -> small.submit(Priority.LOW, "rejected", new MqttMessage(), null));
+        assertEquals(Priority.LOW, e.getPriority());
+    }
+
+    private void send(String topic, MqttMessage message, MQTTPublishEvent event) throws MqttException {
+        if (this.failing) {
+            throw new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED);
+        }
+        this.sent.add(topic);
+    }
+
+    private List<String> sentOn(String prefix) {
+        return this.sent.stream().filter(topic -> topic.startsWith(prefix)).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,86 @@
+package com.mohey.mqtt.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Forwards a localhost port to the embedded broker once opened, so that a test controls when a client can connect
+ * @since 2026/10/19
+ */
+final class TcpForwarder implements AutoCloseable {
+
+    private final int port;
+
+    private final int targetPort;
+
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+    private ServerSocket server;
+
+    TcpForwarder(int targetPort) throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            this.port = socket.getLocalPort();
+        }
+        this.targetPort = targetPort;
+    }
+
+    int getPort() {
+        return this.port;
+    }
+
+    /**
+     * Starts accepting connections and forwarding them to the target port
+     */
+    void open() throws IOException {
+        this.server = new ServerSocket(this.port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            while (!this.server.isClosed()) {
+                try {
+                    Socket client = this.server.accept();
+                    Socket target = new Socket(InetAddress.getLoopbackAddress(), this.targetPort);
+                    this.sockets.add(client);
+                    this.sockets.add(target);
+                    pump(client, target);
+                    pump(target, client);
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }, "tcp-forwarder-" + this.port);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.server != null) {
+            this.server.close();
+        }
+        for (Socket socket : this.sockets) {
+            socket.close();
+        }
+    }
+
+    private static void pump(Socket from, Socket to) {
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[8192];
+            try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, read);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // Either side closed
+            }
+        }, "tcp-forwarder-pump");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,55 @@
+package com.mohey.mqtt.integration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopicPartitionedChannelTests {
+
+    private final TopicPartitionedChannel channel = new TopicPartitionedChannel(1, 1);
+
+    @AfterEach
+    void destroyChannel() {
+        this.channel.destroy();
+    }
+
+    @Test
+    void blocksSenderWhenPartitionIsFull() throws Exception {
+        CountDownLatch handling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        this.channel.subscribe(message -> {
+            handling.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        this.channel.send(message("sensors/1"));
+        assertTrue(handling.await(10, TimeUnit.SECONDS));
+        this.channel.send(message("sensors/2"));
+
+        CompletableFuture<Boolean> blocked = CompletableFuture.supplyAsync(() -> this.channel.send(message("sensors/3")));
+        assertThrows(TimeoutException.class, () -> blocked.get(500, TimeUnit.MILLISECONDS));
+        assertFalse(blocked.isDone());
+
+        release.countDown();
+        assertTrue(blocked.get(10, TimeUnit.SECONDS));
+    }
+
+    private static Message<String> message(String topic) {
+        return MessageBuilder.withPayload("payload").setHeader(MqttHeaders.RECEIVED_TOPIC, topic).build();
+    }
+}
@@ -0,0 +1,120 @@
+package com.mohey.mqtt.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PublishRateLimiterTests {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void refundsPrefixTokenWhenClientBucketRefuses() throws Exception {
+        Map<String, Double> prefixRates = Collections.singletonMap("a/", 0.01);
+        PublishRateLimiter limiter = new PublishRateLimiter(1000, 1, prefixRates, false, 10, 200, 10);
+        assertTrue(limiter.tryAcquire("b/1"));
+
+        assertFalse(limiter.tryAcquire("a/1"));
+        // The client bucket is back to one token, the prefix one still has its own only if it was refunded
+        Thread.sleep(5);
+        assertTrue(limiter.tryAcquire("a/1"));
+    }
+
+    @Test
+    void usesLongestMatchingPrefix() {
+        Map<String, Double> prefixRates = new LinkedHashMap<>();
+        prefixRates.put("a/", 1000.0);
+        prefixRates.put("a/b/", 0.01);
+        PublishRateLimiter limiter = new PublishRateLimiter(0, 0, prefixRates, false, 10, 200, 10);
+
+        assertTrue(limiter.tryAcquire("a/b/c"));
+        assertFalse(limiter.tryAcquire("a/b/c"));
+        assertTrue(limiter.tryAcquire("a/x"));
+        assertTrue(limiter.tryAcquire("other"));
+    }
+
+    @Test
+    void parsesPrefixRatesInOrder() {
+        Map<String, Double> prefixRates = PublishRateLimiter.parsePrefixRates(" telemetry/=500, commands/=50.5,,");
+
+        assertEquals(List.of("telemetry/", "commands/"), List.copyOf(prefixRates.keySet()));
+        assertEquals(500.0, prefixRates.get("telemetry/"));
+        assertEquals(50.5, prefixRates.get("commands/"));
+        assertTrue(PublishRateLimiter.parsePrefixRates("").isEmpty());
+    }
+
+    @Test
+    void rejectsMalformedPrefixRates() {
+        assertThrows(IllegalArgumentException.class, () -> PublishRateLimiter.parsePrefixRates("telemetry/"));
+        assertThrows(IllegalArgumentException.class, () -> PublishRateLimiter.parsePrefixRates("=500"));
+        assertThrows(NumberFormatException.class, () -> PublishRateLimiter.parsePrefixRates("telemetry/=fast"));
+    }
+
+    @Test
+    void decreasesMultiplicativelyOncePerHoldPeriod() throws Exception {
+        PublishRateLimiter limiter = new PublishRateLimiter(100, 0, Collections.emptyMap(), true, 10, 100, 10);
+
+        limiter.onDelivered(200 * MILLIS, 0);
+        assertEquals(70, limiter.getRate(), 1e-9);
+        // Within the 200 ms the slow delivery took, further signals belong to the same congestion
+        limiter.onDelivered(200 * MILLIS, 0);
+        limiter.onRejected();
+        assertEquals(70, limiter.getRate(), 1e-9);
+
+        Thread.sleep(250);
+        limiter.onDelivered(200 * MILLIS, 0);
+        assertEquals(49, limiter.getRate(), 1e-9);
+    }
+
+    @Test
+    void decreasesWhenInFlightWindowIsNearlyFull() {
+        PublishRateLimiter limiter = new PublishRateLimiter(100, 0, Collections.emptyMap(), true, 10, 100, 10);
+
+        limiter.onDelivered(MILLIS, 8);
+        assertEquals(70, limiter.getRate(), 1e-9);
+    }
+
+    @Test
+    void increasesAdditivelyUpToConfiguredRate() {
+        PublishRateLimiter limiter = new PublishRateLimiter(100, 0, Collections.emptyMap(), true, 10, 100, 10);
+        limiter.onRejected();
+        assertEquals(70, limiter.getRate(), 1e-9);
+
+        limiter.onDelivered(MILLIS, 0);
+        // 5% of the configured rate per second, spread over the deliveries of one second at the current rate
+        assertEquals(70 + 5.0 / 70, limiter.getRate(), 1e-9);
+        for (int i = 0; i < 10_000; i++) {
+            limiter.onDelivered(MILLIS, 0);
+        }
+        assertEquals(100, limiter.getRate(), 1e-9);
+    }
+
+    @Test
+    void neverGoesBelowMinRate() throws Exception {
+        PublishRateLimiter limiter = new PublishRateLimiter(100, 0, Collections.emptyMap(), true, 10, 1, 10);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.onDelivered(2 * MILLIS, 0);
+            Thread.sleep(3);
+        }
+        assertEquals(10, limiter.getRate(), 1e-9);
+    }
+
+    @Test
+    void ignoresDeliveriesWhenNotAdaptive() {
+        PublishRateLimiter limiter = new PublishRateLimiter(100, 0, Collections.emptyMap(), false, 10, 100, 10);
+
+        limiter.onDelivered(1000 * MILLIS, 10);
+        limiter.onRejected();
+        assertEquals(100, limiter.getRate(), 1e-9);
+    }
+}
@@ -0,0 +1,75 @@
+package com.mohey.mqtt.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTests {
+
+    @Test
+    void allowsBurstThenRefuses() {
+        TokenBucket bucket = new TokenBucket(0.01, 5);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void refillsAtRate() throws Exception {
+        TokenBucket bucket = new TokenBucket(100, 1);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        Thread.sleep(30);
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    void reserveGoesIntoDebtAndQueuesCallers() {
+        TokenBucket bucket = new TokenBucket(10, 1);
+
+        assertEquals(0, bucket.reserve());
+        long first = bucket.reserve();
+        long second = bucket.reserve();
+        assertTrue(first > TimeUnit.MILLISECONDS.toNanos(90) && first <= TimeUnit.MILLISECONDS.toNanos(100), first + " ns");
+        assertTrue(second > TimeUnit.MILLISECONDS.toNanos(190) && second <= TimeUnit.MILLISECONDS.toNanos(200), second + " ns");
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void refundIsCappedAtBurst() {
+        TokenBucket bucket = new TokenBucket(0.01, 2);
+        bucket.refund();
+        bucket.refund();
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void keepsAccruedTokensWhenRateChanges() throws Exception {
+        TokenBucket bucket = new TokenBucket(100, 1);
+        assertTrue(bucket.tryAcquire());
+        Thread.sleep(30);
+        bucket.setRate(0.01);
+
+        assertEquals(0.01, bucket.getRate());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void rejectsNonPositiveRate() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(Double.NaN, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 1).setRate(-1));
+    }
+}
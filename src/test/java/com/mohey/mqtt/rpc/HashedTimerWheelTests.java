@@ -0,0 +1,98 @@
+package com.mohey.mqtt.rpc;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashedTimerWheelTests {
+
+    /**
+     * 4 buckets of 1 ms, so any deadline beyond 4 ms takes several rounds
+     */
+    private final HashedTimerWheel timer = new HashedTimerWheel(1, TimeUnit.MILLISECONDS, 4, "test-timer");
+
+    @AfterEach
+    void closeTimer() {
+        this.timer.close();
+    }
+
+    @Test
+    void runsTaskOnceDelayElapsed() throws Exception {
+        long start = System.nanoTime();
+        CountDownLatch expired = new CountDownLatch(1);
+        this.timer.schedule(expired::countDown, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    void firesMultiRoundDeadlinesInOrderAndNotEarly() throws Exception {
+        long start = System.nanoTime();
+        List<Integer> fired = new CopyOnWriteArrayList<>();
+        List<Long> elapsed = new CopyOnWriteArrayList<>();
+        CountDownLatch expired = new CountDownLatch(5);
+        for (int delay : new int[]{45, 13, 30, 7, 22}) {
+            this.timer.schedule(() -> {
+                elapsed.add(System.nanoTime() - start);
+                fired.add(delay);
+                expired.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(7, 13, 22, 30, 45), fired);
+        for (int i = 0; i < fired.size(); i++) {
+            assertTrue(elapsed.get(i) >= TimeUnit.MILLISECONDS.toNanos(fired.get(i)), fired.get(i) + " ms fired early");
+        }
+    }
+
+    @Test
+    void cancelBeforeTransferPreventsTask() throws Exception {
+        AtomicBoolean ran = new AtomicBoolean();
+        HashedTimerWheel.Timeout timeout = this.timer.schedule(() -> ran.set(true), 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        Thread.sleep(100);
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void cancelAfterTransferPreventsTask() throws Exception {
+        AtomicBoolean ran = new AtomicBoolean();
+        HashedTimerWheel.Timeout timeout = this.timer.schedule(() -> ran.set(true), 80, TimeUnit.MILLISECONDS);
+        // Several ticks, the timeout now sits in its bucket
+        Thread.sleep(20);
+
+        assertTrue(timeout.cancel());
+        Thread.sleep(150);
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void cancelAfterExpiryReturnsFalse() throws Exception {
+        CountDownLatch expired = new CountDownLatch(1);
+        HashedTimerWheel.Timeout timeout = this.timer.schedule(expired::countDown, 1, TimeUnit.MILLISECONDS);
+
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    void rejectsScheduleAfterClose() {
+        this.timer.close();
+
+        assertThrows(IllegalStateException.class, () -> this.timer.schedule(() -> { }, 1, TimeUnit.MILLISECONDS));
+    }
+}
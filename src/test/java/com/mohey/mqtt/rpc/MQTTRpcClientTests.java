@@ -0,0 +1,99 @@
+package com.mohey.mqtt.rpc;
+
+import com.mohey.mqtt.core.EmbeddedBroker;
+import com.mohey.mqtt.core.MQTTPublisher;
+import com.mohey.mqtt.core.MQTTSubscriber;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MQTTRpcClientTests {
+
+    private EmbeddedBroker broker;
+
+    private MQTTRpcClient rpcClient;
+
+    @BeforeEach
+    void startBroker() throws Exception {
+        this.broker = new EmbeddedBroker();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("mqtt.qos", 0);
+        properties.put("mqtt.maxInflight", 1000);
+        properties.put("mqtt.lanes.queueSize", 50_000);
+        // One reply every 2 s if replies were rate limited, which would stall the serving callback thread
+        properties.put("mqtt.rateLimit.prefixes", "rpc/reply/=0.5");
+        MQTTPublisher publisher = this.broker.client(MQTTPublisher.class, "rpc", properties);
+        MQTTSubscriber subscriber = this.broker.subscriber("rpc", properties);
+        while (!publisher.isConnected()) {
+            Thread.sleep(20);
+        }
+        this.rpcClient = new MQTTRpcClient(publisher, subscriber, 10, 512);
+    }
+
+    @AfterEach
+    void stopBroker() throws Exception {
+        this.rpcClient.close();
+        this.broker.close();
+    }
+
+    @Test
+    void repliesToRequests() throws Exception {
+        this.rpcClient.serve("rpc/upper", request -> new String(request, StandardCharsets.UTF_8).toUpperCase().getBytes(StandardCharsets.UTF_8));
+
+        byte[] reply = this.rpcClient.request("rpc/upper", "hello".getBytes(StandardCharsets.UTF_8), Duration.ofSeconds(10))
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals("HELLO", new String(reply, StandardCharsets.UTF_8));
+        assertEquals(0, this.rpcClient.getPendingRequests());
+    }
+
+    @Test
+    void repliesSkipThePublishRateLimit() throws Exception {
+        this.rpcClient.serve("rpc/echo", request -> request);
+
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(this.rpcClient.request("rpc/echo", new byte[]{(byte) i}, Duration.ofSeconds(10)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(3, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void timesOutTensOfThousandsOfOutstandingRequests() throws Exception {
+        int requests = 20_000;
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            futures.add(this.rpcClient.request("rpc/nobody", new byte[0], Duration.ofSeconds(5)));
+        }
+        assertEquals(requests, this.rpcClient.getPendingRequests());
+
+        for (CompletableFuture<byte[]> future : futures) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(20, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof TimeoutException, e.getCause().toString());
+        }
+        assertEquals(0, this.rpcClient.getPendingRequests());
+    }
+
+    @Test
+    void failsRequestsAfterClose() {
+        this.rpcClient.close();
+
+        CompletableFuture<byte[]> future = this.rpcClient.request("rpc/upper", new byte[0], Duration.ofSeconds(1));
+        assertTrue(future.isCompletedExceptionally());
+    }
+}
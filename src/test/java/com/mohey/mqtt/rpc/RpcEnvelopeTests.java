@@ -0,0 +1,46 @@
+package com.mohey.mqtt.rpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RpcEnvelopeTests {
+
+    @Test
+    void decodesWhatItEncodes() {
+        byte[] payload = {0, 1, 2, (byte) 0xFF};
+        RpcEnvelope decoded = RpcEnvelope.decode(new RpcEnvelope("rpc/reply/clïent/42", payload).encode());
+
+        assertEquals("rpc/reply/clïent/42", decoded.getReplyTopic());
+        assertArrayEquals(payload, decoded.getPayload());
+    }
+
+    @Test
+    void encodesReplyTopicLengthAsUnsignedShort() {
+        String topic = "r".repeat(40_000);
+        byte[] encoded = new RpcEnvelope(topic, new byte[0]).encode();
+
+        assertEquals(Short.BYTES + 40_000, encoded.length);
+        assertEquals(topic, RpcEnvelope.decode(encoded).getReplyTopic());
+        assertEquals(0, RpcEnvelope.decode(encoded).getPayload().length);
+    }
+
+    @Test
+    void rejectsReplyTopicLongerThanUnsignedShort() {
+        RpcEnvelope envelope = new RpcEnvelope("r".repeat(0x10000), new byte[0]);
+
+        assertThrows(IllegalArgumentException.class, envelope::encode);
+    }
+
+    @Test
+    void rejectsTruncatedRequests() {
+        assertThrows(IllegalArgumentException.class, () -> RpcEnvelope.decode(new byte[1]));
+        byte[] truncated = {0, 10, 'r', 'p', 'c'};
+        assertThrows(IllegalArgumentException.class, () -> RpcEnvelope.decode(truncated));
+        assertThrows(IllegalArgumentException.class, () -> RpcEnvelope.decode("plain".getBytes(StandardCharsets.UTF_8)));
+    }
+}